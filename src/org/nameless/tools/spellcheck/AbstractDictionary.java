@@ -4,22 +4,17 @@
 
 package org.nameless.tools.spellcheck;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.JarURLConnection;
-import java.net.URL;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Enumeration;
-import java.util.HashSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
-import org.nameless.tools.spellcheck.ui.PrefsHelper;
 
 /**
  * Base class for the dictionary functionality. It provides the common logic for
@@ -27,7 +22,7 @@ import org.nameless.tools.spellcheck.ui.PrefsHelper;
  * words to the custom dictionaries etc.
  * @author bsodhi
  */
-public abstract class AbstractDictionary {
+public abstract class AbstractDictionary implements Iterable<String> {
     /**
      * Encoding to be used for reading and writing the words.
      */
@@ -62,6 +57,11 @@ public abstract class AbstractDictionary {
      * Type of the dictionary this instance holds.
      */
     protected byte type;
+    /**
+     * Listeners notified of the changes to this dictionary.
+     */
+    private final CopyOnWriteArrayList<DictionaryListener> listeners =
+            new CopyOnWriteArrayList<DictionaryListener>();
 
     /**
      * Adds a word to this dictionary. Addition is done to the in-memory 
@@ -81,12 +81,55 @@ public abstract class AbstractDictionary {
      */
     public abstract boolean containsWord(String word);
 
+    /**
+     * Checks if a part of the given text is a word of this dictionary.
+     * Implementations fold the case of the chars while searching, so that a
+     * word can be looked up where it was found without creating any objects;
+     * only a part that {@link CaseFolding} cannot fold one char at a time is
+     * copied. The default implementation copies the part.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return true if the word exists in this dictionary, else false.
+     */
+    public boolean containsWord(CharSequence text, int start, int end) {
+        return containsWord(text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Checks if a part of the given chars is a word of this dictionary.
+     * @param chars Chars holding the word.
+     * @param offset Offset of the word.
+     * @param length Length of the word.
+     * @return true if the word exists in this dictionary, else false.
+     * @see #containsWord(CharSequence, int, int)
+     */
+    public boolean containsWord(char[] chars, int offset, int length) {
+        return containsWord(CharBuffer.wrap(chars), offset, offset + length);
+    }
+
+    /**
+     * Iterates over the words of this dictionary, in lower case.
+     * @return Iterator over the words.
+     */
+    public abstract Iterator<String> iterator();
+
     /**
      * Size of this dictionary.
      * @return Size of this dictionary.
      */
     public abstract int getSize();
 
+    /**
+     * Tells if this dictionary keeps its words off the heap and looks them up
+     * cheaply, in which case indexes over several dictionaries should look
+     * them up in place rather than copy them.
+     * @return false by default.
+     */
+    public boolean isOffHeap() {
+        return false;
+    }
+
     /**
      * Type of the dictionary this instance holds.
      * @return Dictionary type.
@@ -104,6 +147,92 @@ public abstract class AbstractDictionary {
     }
     
     
+    /**
+     * Registers a listener to be notified of the changes to this dictionary.
+     * @param listener
+     */
+    public void addDictionaryListener(DictionaryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with
+     * {@link #addDictionaryListener(DictionaryListener)}.
+     * @param listener
+     */
+    public void removeDictionaryListener(DictionaryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notifies the listeners that words were added or removed.
+     * @param added Added words in lower case.
+     * @param removed Removed words in lower case.
+     */
+    protected void fireWordsChanged(Collection<String> added, Collection<String> removed) {
+        for (DictionaryListener l : listeners) {
+            l.wordsChanged(this, added, removed);
+        }
+    }
+
+    /**
+     * Notifies the listeners that all the words were replaced.
+     */
+    protected void fireDictionaryReloaded() {
+        for (DictionaryListener l : listeners) {
+            l.dictionaryReloaded(this);
+        }
+    }
+
+    /**
+     * Searches sorted lower case words for a part of a text, folding its case
+     * one char at a time where {@link CaseFolding} allows it.
+     * @param sorted Sorted lower case words.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return true if the word is found.
+     */
+    static boolean search(String[] sorted, CharSequence text, int start, int end) {
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        int lo = 0;
+        int hi = sorted.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareIgnoreCase(sorted[mid], text, start, end);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares a lower case word with a part of a text as
+     * {@link String#compareTo(String)} would compare it with the lower case
+     * part.
+     */
+    private static int compareIgnoreCase(String key, CharSequence text, int start, int end) {
+        int n = Math.min(key.length(), end - start);
+        for (int i = 0; i < n; i++) {
+            char a = key.charAt(i);
+            char b = Character.toLowerCase(text.charAt(start + i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return key.length() - (end - start);
+    }
+
     /**
      * Sorts the dictionary.
      */
@@ -111,58 +240,54 @@ public abstract class AbstractDictionary {
         Collections.sort(dictionary);
         logger.info("Dictionary size: " + dictionary.size() + " words.");        
     }
+
+    /**
+     * Called by the loaders once the words are in {@link #dictionary} and
+     * sorted. Implementations keeping the words in some other structure can
+     * build it here. Does nothing by default.
+     */
+    protected void wordsLoaded() {
+    }
     
     /**
      * Initializes the system dictionary. The system dictionary files must be
      * present in a JAR/ZIP file created with the base directory named
      * "dictionaries". So the JAR/ZIP file will look like this:
      * jar:[url]!/dictionaries/*.*
+     * The word lists are loaded concurrently by a temporary
+     * {@link DictionaryLoader}.
      * @param jarRoot Root of the jar file under which dictionary files are
      * stored. E.g. 'dictionaries' in case of jar:[url]!/dictionaries/*.*
-     * @return Dictionary words.
      * @throws java.io.IOException
      */
     public void loadFromClasspathJar(String jarRoot) throws IOException {
-        
-        dictionary = new ArrayList<String>();
+        DictionaryLoader loader = new DictionaryLoader();
         try {
-            if (PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.All)) {
-                logger.info("All system word lists are excluded!");
-                return;
-            }
-            URL url = Thread.currentThread().
-                    getContextClassLoader().getResource(jarRoot);
-            JarURLConnection jarConnection = (JarURLConnection)url.openConnection();
-            JarFile jarFile = jarConnection.getJarFile();
-            Enumeration entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry ent = (JarEntry) entries.nextElement();
-                String name = ent.getName().toLowerCase();
-                if (name.startsWith("meta-inf")) continue;
-                if (name.contains("american") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.American)) {
-                    logger.info("Skipping American words list: "+name);
-                    continue;
-                } else if (name.contains("british") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.British)) {
-                    logger.info("Skipping British words list: "+name);
-                    continue;
-                } else if (name.contains("canadian") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.Canadian)) {
-                    logger.info("Skipping Canadian words list: "+name);
-                    continue;
-                } else if (name.contains("english") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.English)) {
-                    logger.info("Skipping English words list: "+name);
-                    continue;
-                }
-                HashSet<String> words = 
-                        processJarEntry(jarFile.getInputStream(ent));
-                dictionary.addAll(words);
-            }
-            jarFile.close();
-            sort();
+            loadFromClasspathJar(jarRoot, loader);
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    /**
+     * Initializes the system dictionary using the given loader.
+     * @param jarRoot Root of the jar file under which dictionary files are
+     * stored. E.g. 'dictionaries' in case of jar:[url]!/dictionaries/*.*
+     * @param loader Loader to read the word lists with.
+     * @throws java.io.IOException
+     * @see #loadFromClasspathJar(String)
+     */
+    public void loadFromClasspathJar(String jarRoot, DictionaryLoader loader)
+            throws IOException {
+        try {
+            dictionary = loader.loadClasspathJar(jarRoot);
         } catch (Exception ex) {
             IOException ioe = new IOException("Could not initialize dictionary.");
             ioe.initCause(ex);
             throw ioe;
         }
+        logger.info("Dictionary size: " + dictionary.size() + " words.");
+        wordsLoaded();
     }
     
     /**
@@ -173,44 +298,20 @@ public abstract class AbstractDictionary {
      * @throws java.io.IOException
      */
     public void loadFromFile(File dict) throws IOException {
-        this.dictionaryFile = dict;
-        BufferedReader in = null;
-        HashSet<String> words = new HashSet<String>();
-        try {
-            in = new BufferedReader(new InputStreamReader(new FileInputStream(dict),CHAR_ENCODING));
-            String line = null;
-            while ((line = in.readLine()) != null) {
-                // Store all words in lowercase
-                words.add(line.trim().toLowerCase());
-            }
-        } finally {
-            try {
-                in.close();
-            } catch (Exception ex) {
-            }
-        }
-        dictionary = new ArrayList<String>(words);
-        sort();
+        String[] words = DictionaryLoader.readWords(dict.getPath(), new FileInputStream(dict));
+        loadSorted(dict, new ArrayList<String>(Arrays.asList(words)));
     }
-    
+
     /**
-     * Reads the contents of the JAR/ZIP file entry (which is a dictionary file)
-     * and adds the words found in it to the main dictionary data structure.
-     * @param input ZIP/JAR file entry's input stream to read from.
-     * @throws java.io.IOException
+     * Initializes this dictionary with words already read from the given
+     * dictionary file, e.g. by a {@link DictionaryLoader}.
+     * @param dict Dictionary file the words were read from.
+     * @param sortedWords Sorted unique lower case words.
      */
-    private HashSet<String> processJarEntry(InputStream input)
-            throws IOException {
-        
-        HashSet<String> words = new HashSet<String>();
-        InputStreamReader isr =
-                new InputStreamReader(input,CHAR_ENCODING);
-        BufferedReader reader = new BufferedReader(isr);
-        String line;
-        while ((line = reader.readLine()) != null) {
-            words.add(line.trim().toLowerCase());
-        }
-        reader.close();
-        return words;
-    }    
+    void loadSorted(File dict, ArrayList<String> sortedWords) {
+        this.dictionaryFile = dict;
+        dictionary = sortedWords;
+        logger.info("Dictionary size: " + dictionary.size() + " words.");
+        wordsLoaded();
+    }
 }
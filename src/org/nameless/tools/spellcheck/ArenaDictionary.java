@@ -0,0 +1,359 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Dictionary keeping its words off the heap, for large read-mostly word lists
+ * like product terms. The words are packed as UTF-8 into one direct buffer,
+ * with an int table of their offsets and an open addressing hash table of
+ * their ids next to them, so a word costs a few bytes besides its chars and
+ * nothing of it is seen by the garbage collector.
+ * <p>
+ * {@link #containsWord(String)} folds the case of the searched word and
+ * encodes it to UTF-8 one code point at a time while hashing and comparing,
+ * so it does not create any objects.
+ * <p>
+ * Words added later are kept in a small copy-on-write array on the heap and
+ * appended to the dictionary file, as in {@link AutomatonDictionary}.
+ * <p>
+ * Indexes look this dictionary up in place for every word they do not
+ * otherwise have, so a {@link BloomFilter} on the heap turns down most of
+ * those words before the packed words are probed.
+ * @author bsodhi
+ */
+public class ArenaDictionary extends AbstractDictionary {
+
+    /**
+     * Packed words, empty until loaded.
+     */
+    private volatile Arena arena = Arena.EMPTY;
+    /**
+     * Words added after loading, sorted, never modified once published.
+     */
+    private volatile String[] added = new String[0];
+    /**
+     * Filter of all the words, added to before {@link #added} is assigned
+     * and read after it.
+     */
+    private BloomFilter filter = BloomFilter.of(Collections.<String>emptyList(), 16);
+
+    public ArenaDictionary() {
+        super();
+    }
+
+    public ArenaDictionary(ArrayList<String> dictionary) {
+        super();
+        this.dictionary = dictionary;
+        sort();
+        wordsLoaded();
+    }
+
+    @Override
+    protected void wordsLoaded() {
+        try {
+            arena = new Arena(dictionary);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+        filter = BloomFilter.of(dictionary, dictionary.size() / 4 + 16);
+        logger.info("Dictionary arena: " + arena.size + " words in "
+                + arena.getByteSize() + " bytes. Bloom filter: " + filter + ".");
+        dictionary = null;
+        added = new String[0];
+    }
+
+    /**
+     * Lookups look at the packed words directly, so indexes should not copy
+     * them.
+     */
+    @Override
+    public boolean isOffHeap() {
+        return true;
+    }
+
+    /**
+     * Size of the off-heap buffer holding the words and their tables.
+     * @return Size in bytes.
+     */
+    public long getByteSize() {
+        return arena.getByteSize();
+    }
+
+    public Iterator<String> iterator() {
+        final Arena a = arena;
+        final String[] more = added;
+        return new Iterator<String>() {
+
+            private int next;
+
+            public boolean hasNext() {
+                return next < a.size + more.length;
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int i = next++;
+                return i < a.size ? a.word(i) : more[i - a.size];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int getSize() {
+        return arena.size + added.length;
+    }
+
+    public boolean containsWord(String word) {
+        return containsWord(word, 0, word.length());
+    }
+
+    @Override
+    public boolean containsWord(CharSequence text, int start, int end) {
+        String[] more = added;
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        if (!filter.mightContain(text, start, end)) {
+            return false;
+        }
+        if (arena.contains(text, start, end)) {
+            return true;
+        }
+        return more.length > 0 && search(more, text, start, end);
+    }
+
+    /**
+     * Bloom filter in front of the words, e.g. to look at its false positive
+     * rate.
+     * @return The current filter.
+     */
+    public synchronized BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Adds a word to this dictionary. Addition is done to the in-memory
+     * dictionary and if loaded from a disk file the to that file as well.
+     * The text is tokenized into individual words and converted to lowercase
+     * before adding.
+     *
+     * @param text
+     * @throws java.io.IOException
+     */
+    public synchronized void add(String text) throws IOException {
+        String[] tokens = text.split("\\n");
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String word : tokens) {
+            String origWord = word;
+            word = word.trim().toLowerCase();
+            if (word.length() == 0 || arena.contains(word, 0, word.length())) {
+                continue;
+            }
+            int index = Arrays.binarySearch(added, word);
+            if (index < 0) {
+                logger.info("Adding " + word + " to dictionary.");
+                int at = -index - 1;
+                String[] a = new String[added.length + 1];
+                System.arraycopy(added, 0, a, 0, at);
+                a[at] = word;
+                System.arraycopy(added, at, a, at + 1, added.length - at);
+                filter.add(word);
+                if (filter.isOverfilled()) {
+                    ArrayList<String> all = new ArrayList<String>(arena.size + a.length);
+                    for (int i = 0; i < arena.size; i++) {
+                        all.add(arena.word(i));
+                    }
+                    all.addAll(Arrays.asList(a));
+                    filter = BloomFilter.of(all, all.size() / 4 + 16);
+                }
+                added = a;
+                if (dictionaryFile != null) {
+                    FileOutputStream fos = new FileOutputStream(dictionaryFile, true);
+                    fos.write(origWord.getBytes(CHAR_ENCODING));
+                    fos.write("\n".getBytes(CHAR_ENCODING));
+                    fos.close();
+                }
+                changed.add(word);
+            }
+        }
+        if (!changed.isEmpty()) {
+            fireWordsChanged(changed, Collections.<String>emptyList());
+        }
+    }
+
+    /**
+     * Immutable packed words. The direct buffer holds the UTF-8 bytes of the
+     * words, then <i>n + 1</i> int offsets of the words in the bytes, then
+     * the hash slots, each holding the id of a word plus one or 0 if empty.
+     */
+    private static class Arena {
+
+        static final Arena EMPTY = empty();
+
+        private final ByteBuffer bytes;
+        private final IntBuffer offsets;
+        private final IntBuffer slots;
+        private final int mask;
+        final int size;
+
+        Arena(ArrayList<String> words) throws UnsupportedEncodingException {
+            size = words.size();
+            byte[][] encoded = new byte[size][];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                encoded[i] = words.get(i).getBytes(CHAR_ENCODING);
+                length += encoded[i].length;
+            }
+            int capacity = 16;
+            while (capacity < size * 2) {
+                capacity <<= 1;
+            }
+            mask = capacity - 1;
+            // Keep the int tables aligned
+            int tables = (length + 3) & ~3;
+            ByteBuffer data = ByteBuffer.allocateDirect(tables + 4 * (size + 1 + capacity))
+                    .order(ByteOrder.nativeOrder());
+            for (byte[] b : encoded) {
+                data.put(b);
+            }
+            data.limit(tables + 4 * (size + 1)).position(tables);
+            offsets = data.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+            data.limit(data.capacity()).position(tables + 4 * (size + 1));
+            slots = data.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+            data.limit(length).position(0);
+            bytes = data.slice();
+            int offset = 0;
+            for (int id = 0; id < size; id++) {
+                offsets.put(id, offset);
+                byte[] b = encoded[id];
+                offset += b.length;
+                int h = 0x811c9dc5;
+                for (byte x : b) {
+                    h = (h ^ (x & 0xff)) * 0x01000193;
+                }
+                int i = h & mask;
+                while (slots.get(i) != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots.put(i, id + 1);
+            }
+            offsets.put(size, offset);
+        }
+
+        private static Arena empty() {
+            try {
+                return new Arena(new ArrayList<String>());
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        long getByteSize() {
+            return bytes.capacity() + 4L * (offsets.capacity() + slots.capacity());
+        }
+
+        String word(int id) {
+            int start = offsets.get(id);
+            byte[] b = new byte[offsets.get(id + 1) - start];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = bytes.get(start + i);
+            }
+            try {
+                return new String(b, CHAR_ENCODING);
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        boolean contains(CharSequence text, int start, int end) {
+            // FNV-1a hash and length of the folded UTF-8 bytes
+            int h = 0x811c9dc5;
+            int length = 0;
+            for (int i = start; i < end;) {
+                int cp = codePointAt(text, i, end);
+                i += Character.charCount(cp);
+                cp = Character.toLowerCase(cp);
+                int k = utf8Length(cp);
+                for (int j = 0; j < k; j++) {
+                    h = (h ^ utf8Byte(cp, k, j)) * 0x01000193;
+                }
+                length += k;
+            }
+            for (int i = h & mask, id; (id = slots.get(i)) != 0; i = (i + 1) & mask) {
+                int from = offsets.get(id - 1);
+                if (offsets.get(id) - from == length && matches(text, start, end, from)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(CharSequence text, int start, int end, int from) {
+            int p = from;
+            for (int i = start; i < end;) {
+                int cp = codePointAt(text, i, end);
+                i += Character.charCount(cp);
+                cp = Character.toLowerCase(cp);
+                int k = utf8Length(cp);
+                for (int j = 0; j < k; j++) {
+                    if ((bytes.get(p++) & 0xff) != utf8Byte(cp, k, j)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Code point at the given index, not looking past the end of the word.
+         */
+        private static int codePointAt(CharSequence text, int i, int end) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                return Character.toCodePoint(c, text.charAt(i + 1));
+            }
+            return c;
+        }
+
+        private static int utf8Length(int cp) {
+            return cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+        }
+
+        /**
+         * Byte <i>j</i> of the <i>k</i> bytes long UTF-8 encoding of a code
+         * point.
+         */
+        private static int utf8Byte(int cp, int k, int j) {
+            if (k == 1) {
+                return cp;
+            }
+            if (j == 0) {
+                return (0xff00 >> k & 0xff) | (cp >> (6 * (k - 1)));
+            }
+            return 0x80 | ((cp >> (6 * (k - 1 - j))) & 0x3f);
+        }
+    }
+}
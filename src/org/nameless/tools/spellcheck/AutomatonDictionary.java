@@ -0,0 +1,195 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+
+/**
+ * Dictionary backed by a minimal {@link WordAutomaton}. The words are loaded
+ * with the usual loaders of {@link AbstractDictionary} and then compiled into
+ * the automaton, after which the word list is released. It is meant for the
+ * large read-mostly system dictionary: lookups take O(word length) and the
+ * automaton needs a fraction of the memory of the sorted word list.
+ * <p>
+ * Words added later are kept in a small sorted array next to the automaton.
+ * @author bsodhi
+ */
+public class AutomatonDictionary extends AbstractDictionary {
+
+    /**
+     * Compiled words.
+     */
+    private WordAutomaton automaton;
+    /**
+     * Words added after the automaton was built; sorted, never modified once
+     * published.
+     */
+    private volatile String[] added = new String[0];
+
+    public AutomatonDictionary() {
+        super();
+    }
+
+    public AutomatonDictionary(ArrayList<String> dictionary) {
+        super();
+        this.dictionary = dictionary;
+        sort();
+        wordsLoaded();
+    }
+
+    /**
+     * Initializes the system dictionary from a precompiled snapshot. If the
+     * snapshot file is missing or was built from a different JAR or word list
+     * preferences, the words are loaded from the JAR as in
+     * {@link #loadFromClasspathJar(String, DictionaryLoader)} and a new
+     * snapshot is written.
+     * @param jarRoot Root of the jar file under which dictionary files are
+     * stored.
+     * @param snapshot Snapshot file.
+     * @param loader Loader to read the word lists with if needed.
+     * @throws java.io.IOException
+     */
+    public void loadFromSnapshot(String jarRoot, File snapshot, DictionaryLoader loader)
+            throws IOException {
+        String stamp = DictionarySnapshot.getStamp(jarRoot);
+        automaton = DictionarySnapshot.load(snapshot, stamp);
+        if (automaton == null) {
+            loadFromClasspathJar(jarRoot, loader);
+            try {
+                DictionarySnapshot.write(snapshot, stamp, automaton);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not write dictionary snapshot.", ex);
+            }
+        }
+    }
+
+    /**
+     * Loads the words from the JAR and writes them to the given snapshot
+     * file, whether or not an up to date snapshot already exists.
+     * @param jarRoot Root of the jar file under which dictionary files are
+     * stored.
+     * @param snapshot Snapshot file.
+     * @throws java.io.IOException
+     */
+    public void compileFromClasspathJar(String jarRoot, File snapshot) throws IOException {
+        loadFromClasspathJar(jarRoot);
+        DictionarySnapshot.write(snapshot, DictionarySnapshot.getStamp(jarRoot), automaton);
+    }
+
+    @Override
+    protected void wordsLoaded() {
+        automaton = WordAutomaton.build(dictionary);
+        logger.info("Dictionary automaton: " + automaton.size() + " words in "
+                + automaton.getByteSize() + " bytes.");
+        dictionary = null;
+    }
+
+    /**
+     * Iterates over the words of the automaton and the added words, merged
+     * in sorted order.
+     * @return Iterator over all the words.
+     */
+    public Iterator<String> iterator() {
+        final String[] more = added;
+        final Iterator<String> words = automaton.iterator();
+        if (more.length == 0) {
+            return words;
+        }
+        return new Iterator<String>() {
+
+            private String word = words.hasNext() ? words.next() : null;
+            private int next;
+
+            public boolean hasNext() {
+                return word != null || next < more.length;
+            }
+
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (word == null || (next < more.length && more[next].compareTo(word) < 0)) {
+                    return more[next++];
+                }
+                String w = word;
+                word = words.hasNext() ? words.next() : null;
+                return w;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int getSize() {
+        return automaton.size() + added.length;
+    }
+
+    public boolean containsWord(String word) {
+        if (automaton.contains(word)) {
+            return true;
+        }
+        String[] more = added;
+        return more.length > 0 && Arrays.binarySearch(more, word.toLowerCase()) >= 0;
+    }
+
+    @Override
+    public boolean containsWord(CharSequence text, int start, int end) {
+        if (automaton.contains(text, start, end)) {
+            return true;
+        }
+        return added.length > 0 && containsWord(text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Adds a word to this dictionary. Addition is done to the in-memory
+     * dictionary and if loaded from a disk file the to that file as well.
+     * The text is tokenized into individual words and converted to lowercase
+     * before adding.
+     *
+     * @param text
+     * @throws java.io.IOException
+     */
+    public synchronized void add(String text) throws IOException {
+        String[] tokens = text.split("\\n");
+        ArrayList<String> changed = new ArrayList<String>();
+        for (String word : tokens) {
+            String origWord = word;
+            word = word.trim().toLowerCase();
+            if (automaton.contains(word)) {
+                continue;
+            }
+            int index = Arrays.binarySearch(added, word);
+            if (index < 0) {
+                logger.info("Adding " + word + " to dictionary.");
+                int at = -index - 1;
+                String[] a = new String[added.length + 1];
+                System.arraycopy(added, 0, a, 0, at);
+                a[at] = word;
+                System.arraycopy(added, at, a, at + 1, added.length - at);
+                added = a;
+                if (dictionaryFile != null) {
+                    FileOutputStream fos = new FileOutputStream(dictionaryFile, true);
+                    fos.write(origWord.getBytes(CHAR_ENCODING));
+                    fos.write("\n".getBytes(CHAR_ENCODING));
+                    fos.close();
+                }
+                changed.add(word);
+            }
+        }
+        if (!changed.isEmpty()) {
+            fireWordsChanged(changed, Collections.<String>emptyList());
+        }
+    }
+}
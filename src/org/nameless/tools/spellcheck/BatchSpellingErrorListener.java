@@ -0,0 +1,28 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.List;
+
+/**
+ * Listener receiving the spelling errors with their positions, in batches.
+ * When the listener given to a spelling check implements this interface,
+ * {@link #addErrors(List)} is called instead of
+ * {@link SpellingErrorListener#addWord(String)}.
+ * <p>
+ * The batches are delivered in document order, whatever the order the
+ * paragraphs were checked in, and never by two threads at the same time. The
+ * errors of a batch are in document order too, and every occurrence of an
+ * error is delivered.
+ * @author bsodhi
+ */
+public interface BatchSpellingErrorListener extends SpellingErrorListener {
+
+    /**
+     * Adds the errors found in consecutive paragraphs of the document.
+     * @param errors Errors in document order. The list must not be kept.
+     */
+    void addErrors(List<SpellingError> errors);
+}
@@ -0,0 +1,203 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Collection;
+
+/**
+ * Bloom filter of lower case words, put in front of a dictionary so that the
+ * words it certainly does not have are turned down without searching it.
+ * Lookups fold the case of the searched word while hashing, so they do not
+ * create any objects.
+ * <p>
+ * The filter has {@link #getBitsPerWord()} bits per expected word and uses
+ * the number of hash functions giving the lowest false positive rate for
+ * that. Words can be added but not removed; a dictionary rebuilds its filter
+ * when its words are replaced or when more words were added than the filter
+ * was sized for.
+ * <p>
+ * Bits are set without locking. The owning dictionary adds a word to the
+ * filter before publishing it through a volatile field, and reads that field
+ * before the filter, which makes the bits visible.
+ * @author bsodhi
+ */
+public class BloomFilter {
+
+    /**
+     * System property to override the number of bits per word of the
+     * filters.
+     */
+    public static final String BITS_PROPERTY = "spellchecker.bloomBitsPerWord";
+    /**
+     * Default number of bits per word, for a false positive rate under 1%.
+     */
+    public static final int DEFAULT_BITS_PER_WORD = 10;
+
+    private final long[] bits;
+    private final int mask;
+    private final int hashes;
+    private final int bitsPerWord;
+    private final int expected;
+    private int count;
+
+    /**
+     * Creates an empty filter.
+     * @param expected Number of words the filter is sized for.
+     * @param bitsPerWord Number of bits per word.
+     */
+    public BloomFilter(int expected, int bitsPerWord) {
+        if (bitsPerWord < 1) {
+            throw new IllegalArgumentException("bitsPerWord: " + bitsPerWord);
+        }
+        long m = 64;
+        while (m < (long) Math.max(expected, 1) * bitsPerWord && m < (1L << 31)) {
+            m <<= 1;
+        }
+        bits = new long[(int) (m >>> 6)];
+        mask = (int) (m - 1);
+        hashes = Math.max(1, (int) Math.round(bitsPerWord * Math.log(2)));
+        this.bitsPerWord = bitsPerWord;
+        this.expected = expected;
+    }
+
+    /**
+     * Creates a filter of the given words, sized with the default or
+     * configured number of bits per word.
+     * @param words Lower case words.
+     * @param extra Number of words expected to be added later.
+     * @return The filter.
+     */
+    public static BloomFilter of(Collection<String> words, int extra) {
+        BloomFilter f = new BloomFilter(words.size() + extra, getDefaultBitsPerWord());
+        for (String w : words) {
+            f.add(w);
+        }
+        return f;
+    }
+
+    /**
+     * Default number of bits per word.
+     * @return The value of {@link #BITS_PROPERTY}, or
+     * {@link #DEFAULT_BITS_PER_WORD}.
+     */
+    public static int getDefaultBitsPerWord() {
+        return Integer.getInteger(BITS_PROPERTY, DEFAULT_BITS_PER_WORD);
+    }
+
+    /**
+     * Adds a word.
+     * @param word Lower case word.
+     */
+    public void add(CharSequence word) {
+        long h = hash(word, 0, word.length());
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int b = (h1 + i * h2) & mask;
+            bits[b >>> 6] |= 1L << b;
+        }
+        count++;
+    }
+
+    /**
+     * Tells if the filter may have the given word.
+     * @param word Word to search, in any case.
+     * @return false if the word was certainly not added.
+     */
+    public boolean mightContain(CharSequence word) {
+        return mightContain(word, 0, word.length());
+    }
+
+    /**
+     * Tells if the filter may have the word in a part of the given text.
+     * @param text Text holding the word, in any case.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return false if the word was certainly not added.
+     */
+    public boolean mightContain(CharSequence text, int start, int end) {
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        long h = hash(text, start, end);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int b = (h1 + i * h2) & mask;
+            if ((bits[b >>> 6] & (1L << b)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells if more words were added than the filter was sized for, so that
+     * its false positive rate is getting too high.
+     * @return true if the filter should be rebuilt larger.
+     */
+    public boolean isOverfilled() {
+        return count > expected;
+    }
+
+    /**
+     * Estimates the rate of the words not added that the filter lets through,
+     * from the share of bits set.
+     * @return False positive rate between 0 and 1.
+     */
+    public double getFalsePositiveRate() {
+        long set = 0;
+        for (long word : bits) {
+            set += Long.bitCount(word);
+        }
+        return Math.pow((double) set / (bits.length * 64L), hashes);
+    }
+
+    public int getBitsPerWord() {
+        return bitsPerWord;
+    }
+
+    /**
+     * Size of the filter.
+     * @return Number of bits.
+     */
+    public long getBitCount() {
+        return bits.length * 64L;
+    }
+
+    /**
+     * Number of words added.
+     * @return Word count.
+     */
+    public int getWordCount() {
+        return count;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the lower case chars of a word, with a final mix
+     * so that both halves are usable.
+     */
+    private static long hash(CharSequence text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d words, %d bits, %d hashes, %.4f%% false positives",
+                count, getBitCount(), hashes, getFalsePositiveRate() * 100);
+    }
+}
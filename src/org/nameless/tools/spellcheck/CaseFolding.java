@@ -0,0 +1,56 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Locale;
+
+/**
+ * Case folding of the words looked up in place. The dictionaries keep their
+ * words as {@link String#toLowerCase()} gives them in the default locale,
+ * while the lookups fold a token one char at a time so as not to copy it.
+ * Both agree on ASCII text, which is nearly all of it, except that the
+ * Turkish and Azeri locales fold 'I' to a dotless i. Other text, e.g. with a
+ * final sigma or a dotted capital I, is copied and folded as a whole.
+ * @author bsodhi
+ */
+final class CaseFolding {
+
+    private CaseFolding() {
+    }
+
+    /**
+     * Tells if folding a part of a text one char at a time gives the same as
+     * {@link String#toLowerCase()}.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return true if the part can be folded one char at a time.
+     */
+    static boolean isPerChar(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || (c == 'I' && isDotlessLocale())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Folds a part of a text as {@link String#toLowerCase()}.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return Lower case word.
+     */
+    static String fold(CharSequence text, int start, int end) {
+        return text.subSequence(start, end).toString().toLowerCase();
+    }
+
+    private static boolean isDotlessLocale() {
+        String language = Locale.getDefault().getLanguage();
+        return "tr".equals(language) || "az".equals(language);
+    }
+}
@@ -4,16 +4,73 @@
 
 package org.nameless.tools.spellcheck;
 
-import java.io.FileOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
 
 /**
  * Implementation of a words dictionary.
+ * <p>
+ * The words are kept in a sorted array that is never modified once
+ * published: adding or removing words builds a new array and swaps it in, so
+ * lookups never lock and always see a complete snapshot. Changes to a
+ * dictionary loaded from a file go to its {@link DictionaryLog}, which is
+ * compacted back into the file once it holds
+ * {@link #COMPACT_THRESHOLD} records. Compacting merges the file as it is on
+ * disk, so words added to it by other programs or processes are kept.
+ * <p>
+ * When the file is changed by someone else, {@link #reload()} reads it again
+ * and swaps the new words in the same way.
+ * <p>
+ * A {@link BloomFilter} in front of the words turns down most of the words
+ * the dictionary does not have without searching it or changing their case.
  * @author bsodhi
  */
-public class Dictionary extends AbstractDictionary {
+public class Dictionary extends AbstractDictionary implements Closeable {
+
+    /**
+     * Number of log records beyond which the log is compacted into the
+     * dictionary file.
+     */
+    public static final int COMPACT_THRESHOLD = 1000;
+
+    /**
+     * Current words, sorted.
+     */
+    private volatile String[] words = new String[0];
+    /**
+     * Filter of the words, always assigned or added to before {@link #words}
+     * is, and read after it.
+     */
+    private BloomFilter filter = BloomFilter.of(Collections.<String>emptyList(), 0);
+    /**
+     * Log of the changes, null if this dictionary has no file.
+     */
+    private DictionaryLog log;
+    /**
+     * Set if the log could not be replayed, in which case it must not be
+     * compacted.
+     */
+    private boolean logDamaged;
+    /**
+     * Length and modification time of the file when this dictionary last
+     * read or wrote it.
+     */
+    private long fileLength;
+    private long fileModified;
 
     public Dictionary() {
         super();
@@ -23,39 +80,376 @@ public class Dictionary extends AbstractDictionary {
         super();
         this.dictionary = dictionary;
         sort();
+        wordsLoaded();
+    }
+
+    /**
+     * Publishes the loaded words, after replaying the log of the dictionary
+     * file over them.
+     */
+    @Override
+    protected synchronized void wordsLoaded() {
+        String[] w = dictionary.toArray(new String[dictionary.size()]);
+        dictionary = null;
+        if (dictionaryFile != null) {
+            log = new DictionaryLog(dictionaryFile);
+            publish(replayLog(w));
+        } else {
+            publish(w);
+        }
+        logger.info("Bloom filter of dictionary " + dictionaryFile + ": " + filter + ".");
+    }
+
+    /**
+     * Replaces the words, with a new filter.
+     */
+    private void publish(String[] w) {
+        // Room for a quarter more words before the filter is rebuilt
+        filter = BloomFilter.of(Arrays.asList(w), w.length / 4 + 16);
+        words = w;
+    }
+
+    /**
+     * Reads the words of the dictionary file again, e.g. after it was edited
+     * by another program, and replays the log over them. The file is read
+     * without blocking anything; the new words are then swapped in at once,
+     * so lookups see either the old or the new words, and changes made
+     * meanwhile are kept as they are in the log.
+     * @throws java.io.IOException
+     */
+    public void reload() throws IOException {
+        File f;
+        synchronized (this) {
+            f = dictionaryFile;
+        }
+        if (f == null) {
+            return;
+        }
+        String[] base = DictionaryLoader.readWords(f.getPath(), new FileInputStream(f));
+        synchronized (this) {
+            publish(replayLog(base));
+        }
+        logger.info("Reloaded dictionary " + f + ": " + getSize() + " words.");
+        fireDictionaryReloaded();
+    }
+
+    /**
+     * Tells if the dictionary file was changed since this dictionary last
+     * read or wrote it.
+     * @return true if the file changed.
+     */
+    public synchronized boolean isFileChanged() {
+        return dictionaryFile != null && (dictionaryFile.length() != fileLength
+                || dictionaryFile.lastModified() != fileModified);
+    }
+
+    /**
+     * Replays the log over the words read from the file, and notes the state
+     * of the file. Called holding the lock of this dictionary, so no records
+     * are appended meanwhile.
+     * @param w Sorted words of the file.
+     * @return The current words.
+     */
+    private String[] replayLog(String[] w) {
+        fileLength = dictionaryFile.length();
+        fileModified = dictionaryFile.lastModified();
+        try {
+            // Changes appended but not yet committed would be missed
+            log.flush();
+            Map<String, Boolean> changes = log.replay();
+            if (!changes.isEmpty()) {
+                w = apply(w, changes);
+                logger.info("Replayed " + log.getRecordCount() + " records of " + log.getFile());
+            }
+            logDamaged = false;
+        } catch (IOException ex) {
+            logDamaged = true;
+            logger.log(Level.SEVERE, "Could not replay " + log.getFile(), ex);
+        }
+        return w;
+    }
+
+    /**
+     * Applies the records of the log to sorted words.
+     * @param w Sorted unique words.
+     * @param changes Last change of each word, true for an addition.
+     * @return New sorted array.
+     */
+    private static String[] apply(String[] w, Map<String, Boolean> changes) {
+        TreeSet<String> adds = new TreeSet<String>();
+        HashSet<String> removes = new HashSet<String>();
+        for (Map.Entry<String, Boolean> e : changes.entrySet()) {
+            if (e.getValue()) {
+                adds.add(e.getKey());
+            } else {
+                removes.add(e.getKey());
+            }
+        }
+        return merge(w, adds, removes);
+    }
+
+    public Iterator<String> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(words)).iterator();
     }
 
     public int getSize() {
-        return dictionary.size();
+        return words.length;
     }
-    
+
     public boolean containsWord(String word) {
-        return Collections.binarySearch(dictionary, word.toLowerCase()) >= 0;
+        return containsWord(word, 0, word.length());
+    }
+
+    @Override
+    public boolean containsWord(CharSequence text, int start, int end) {
+        String[] w = words;
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        if (!filter.mightContain(text, start, end)) {
+            return false;
+        }
+        return search(w, text, start, end);
     }
 
     /**
-     * Adds a word to this dictionary. Addition is done to the in-memory 
+     * Bloom filter in front of the words, e.g. to look at its false positive
+     * rate.
+     * @return The current filter.
+     */
+    public synchronized BloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Adds a word to this dictionary. Addition is done to the in-memory
      * dictionary and if loaded from a disk file the to that file as well.
      * The text is tokenized into individual words and converted to lowercase
      * before adding.
-     * 
+     *
+     * @param text
+     * @throws java.io.IOException
+     */
+    public void add(String text) throws IOException {
+        change(text, true);
+    }
+
+    /**
+     * Removes words from this dictionary, and if loaded from a disk file from
+     * that file as well. The text is split into words as by
+     * {@link #add(String)}.
      * @param text
      * @throws java.io.IOException
      */
-    public synchronized void add(String text) throws IOException {
-        String[] tokens = text.split("\\n");
-        for (String word : tokens) {
-            String origWord = word;
-            word = word.trim().toLowerCase();
-            int index = Collections.binarySearch(dictionary, word);
-            if (index < 0) {
+    public void remove(String text) throws IOException {
+        change(text, false);
+    }
+
+    private void change(String text, boolean add) throws IOException {
+        TreeSet<String> changed = new TreeSet<String>();
+        DictionaryLog l;
+        long ticket = 0;
+        synchronized (this) {
+            String[] w = words;
+            for (String word : text.split("\\n")) {
+                word = word.trim().toLowerCase();
+                if (word.length() > 0 && (Arrays.binarySearch(w, word) >= 0) != add) {
+                    changed.add(word);
+                }
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+            if (add) {
+                for (String word : changed) {
+                    filter.add(word);
+                }
+                if (filter.isOverfilled()) {
+                    publish(merge(w, changed, null));
+                } else {
+                    words = merge(w, changed, null);
+                }
+            } else {
+                // Removed words stay in the filter until it is rebuilt
+                words = merge(w, null, changed);
+            }
+            l = log;
+            if (l != null) {
+                StringBuilder sb = new StringBuilder();
+                for (String word : changed) {
+                    DictionaryLog.format(sb, word, add);
+                }
+                ticket = l.append(sb);
+            }
+        }
+        Collection<String> none = Collections.emptyList();
+        if (add) {
+            for (String word : changed) {
                 logger.info("Adding " + word + " to dictionary.");
-                dictionary.add(Math.abs(index) - 1, word);
-                FileOutputStream fos = new FileOutputStream(dictionaryFile, true);
-                fos.write(origWord.getBytes(CHAR_ENCODING));
-                fos.write("\n".getBytes(CHAR_ENCODING));
-                fos.close();
             }
+            fireWordsChanged(changed, none);
+        } else {
+            for (String word : changed) {
+                logger.info("Removing " + word + " from dictionary.");
+            }
+            fireWordsChanged(none, changed);
+        }
+        if (l != null) {
+            l.commit(ticket);
+            if (l.getRecordCount() >= COMPACT_THRESHOLD) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the dictionary file with the current words and empties its
+     * log. The file and the log are read again first, so the words other
+     * programs added to the file and the records other processes appended to
+     * the log since this dictionary read them are merged in. Lookups carry on
+     * meanwhile, while changes wait.
+     * @throws java.io.IOException
+     */
+    public void compact() throws IOException {
+        if (rewrite(null)) {
+            fireDictionaryReloaded();
+        }
+    }
+
+    /**
+     * Removes the words the given dictionary already has, e.g. the system
+     * dictionary, and compacts the log into the dictionary file, which is
+     * thus rewritten sorted, in lower case and without duplicates.
+     * @param covered Dictionary whose words are pruned.
+     * @return Number of words pruned.
+     * @throws java.io.IOException
+     */
+    public int prune(AbstractDictionary covered) throws IOException {
+        Pruner pruner = new Pruner(covered);
+        boolean changed;
+        synchronized (this) {
+            if (log == null) {
+                String[] w = pruner.prune(words);
+                changed = pruner.pruned > 0;
+                publish(w);
+            } else {
+                changed = rewrite(pruner);
+            }
+        }
+        logger.info("Pruned " + pruner.pruned + " words from dictionary " + dictionaryFile + ".");
+        if (changed) {
+            fireDictionaryReloaded();
+        }
+        return pruner.pruned;
+    }
+
+    /**
+     * Compacts the log, merging the file and the log as they are on disk and
+     * pruning the words of the given dictionary, and publishes the words
+     * written.
+     * @param pruner Prunes the words, may be null.
+     * @return true if the words differ from the ones published before.
+     */
+    private synchronized boolean rewrite(final Pruner pruner) throws IOException {
+        if (log == null) {
+            return false;
+        }
+        if (logDamaged) {
+            throw new IOException("Not compacting, the log could not be read: " + log.getFile());
+        }
+        List<String> written = log.compact(new DictionaryLog.Rewriter() {
+
+            public List<String> rewrite(String[] base, LinkedHashMap<String, Boolean> changes) {
+                String[] w = apply(base, changes);
+                return Arrays.asList(pruner == null ? w : pruner.prune(w));
+            }
+        });
+        fileLength = dictionaryFile.length();
+        fileModified = dictionaryFile.lastModified();
+        String[] w = written.toArray(new String[written.size()]);
+        boolean changed = !Arrays.equals(w, words);
+        if (changed) {
+            publish(w);
+        }
+        logger.info("Compacted dictionary " + dictionaryFile + ": " + w.length + " words.");
+        return changed;
+    }
+
+    /**
+     * Removes the words of another dictionary, counting them.
+     */
+    private static class Pruner {
+
+        private final AbstractDictionary covered;
+        int pruned;
+
+        Pruner(AbstractDictionary covered) {
+            this.covered = covered;
+        }
+
+        String[] prune(String[] w) {
+            ArrayList<String> kept = new ArrayList<String>(w.length);
+            for (String word : w) {
+                if (!covered.containsWord(word)) {
+                    kept.add(word);
+                }
+            }
+            pruned = w.length - kept.size();
+            return kept.toArray(new String[kept.size()]);
+        }
+    }
+
+    /**
+     * Log of the changes to the dictionary file.
+     * @return The log file, null if this dictionary has no file.
+     */
+    public synchronized File getLogFile() {
+        return log == null ? null : log.getFile();
+    }
+
+    /**
+     * Writes the queued log records. The log is not compacted, as the
+     * dictionary file may be in use by other processes; it is compacted
+     * once it holds {@link #COMPACT_THRESHOLD} records.
+     * @throws java.io.IOException
+     */
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Merges sorted words with additions and removals.
+     * @param base Sorted unique words.
+     * @param adds Words to add, sorted; may be null.
+     * @param removes Words to remove, none of them in adds; may be null.
+     * @return New sorted array.
+     */
+    private static String[] merge(String[] base, Collection<String> adds, Set<String> removes) {
+        ArrayList<String> m = new ArrayList<String>(base.length + (adds == null ? 0 : adds.size()));
+        Iterator<String> a = adds == null ? Collections.<String>emptyList().iterator()
+                : adds.iterator();
+        String next = a.hasNext() ? a.next() : null;
+        for (String word : base) {
+            while (next != null && next.compareTo(word) < 0) {
+                m.add(next);
+                next = a.hasNext() ? a.next() : null;
+            }
+            if (next != null && next.equals(word)) {
+                next = a.hasNext() ? a.next() : null;
+            }
+            if (removes == null || !removes.contains(word)) {
+                m.add(word);
+            }
+        }
+        while (next != null) {
+            m.add(next);
+            next = a.hasNext() ? a.next() : null;
         }
+        return m.toArray(new String[m.size()]);
     }
 }
@@ -0,0 +1,33 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Collection;
+
+/**
+ * Listener for the changes made to a dictionary after it was loaded.
+ * Structures derived from the words of a dictionary register one of these to
+ * stay current.
+ * @author bsodhi
+ */
+public interface DictionaryListener {
+
+    /**
+     * Called after words have been added to or removed from the dictionary,
+     * once for all the words of one change.
+     * @param dictionary The dictionary that changed.
+     * @param added The added words, in lower case.
+     * @param removed The removed words, in lower case.
+     */
+    void wordsChanged(AbstractDictionary dictionary, Collection<String> added,
+            Collection<String> removed);
+
+    /**
+     * Called after all the words of the dictionary have been replaced, e.g.
+     * by reloading its file.
+     * @param dictionary The dictionary that changed.
+     */
+    void dictionaryReloaded(AbstractDictionary dictionary);
+}
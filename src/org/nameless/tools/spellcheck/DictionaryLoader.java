@@ -0,0 +1,389 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import org.nameless.tools.spellcheck.ui.PrefsHelper;
+
+/**
+ * Loads word lists concurrently. Every source (a JAR entry or a custom
+ * dictionary file) is decoded on a pool thread into its own sorted run of
+ * unique lower case words, and the runs are then merged. The time taken by
+ * each source is logged.
+ * <p>
+ * The pool threads are daemon threads and time out when idle, so a loader
+ * can be kept around without holding any threads.
+ * @author bsodhi
+ */
+public class DictionaryLoader {
+
+    /**
+     * Name of the system word list of the most frequent words.
+     */
+    public static final String FREQUENT_WORDS = "frequent.lst";
+    private static Logger logger = Logger.getLogger(DictionaryLoader.class.getName());
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a loader using as many threads as there are processors.
+     */
+    public DictionaryLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a loader with the given number of threads.
+     * @param threads Number of sources decoded at the same time.
+     */
+    public DictionaryLoader(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "dictionary-loader-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Number of threads used by this loader.
+     * @return Pool size.
+     */
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Loads the system word lists stored in a JAR/ZIP file under the given
+     * root, skipping the lists excluded by the user preferences. See
+     * {@link AbstractDictionary#loadFromClasspathJar(String)}.
+     * @param jarRoot Root of the jar file under which dictionary files are
+     * stored.
+     * @return Sorted unique words of all the word lists.
+     * @throws java.io.IOException
+     */
+    public ArrayList<String> loadClasspathJar(String jarRoot) throws IOException {
+        if (PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.All)) {
+            logger.info("All system word lists are excluded!");
+            return new ArrayList<String>();
+        }
+        long start = System.currentTimeMillis();
+        URL url = Thread.currentThread().getContextClassLoader().getResource(jarRoot);
+        if (url == null) {
+            throw new IOException("Dictionary root not found: " + jarRoot);
+        }
+        JarURLConnection jarConnection = (JarURLConnection) url.openConnection();
+        final JarFile jarFile = jarConnection.getJarFile();
+        try {
+            ArrayList<Future<String[]>> runs = new ArrayList<Future<String[]>>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry ent = entries.nextElement();
+                if (ent.isDirectory() || isExcluded(ent.getName().toLowerCase())) {
+                    continue;
+                }
+                runs.add(executor.submit(new Callable<String[]>() {
+
+                    public String[] call() throws IOException {
+                        return readWords(ent.getName(), jarFile.getInputStream(ent));
+                    }
+                }));
+            }
+            ArrayList<String> words = merge(get(runs));
+            logger.info("Loaded " + runs.size() + " word lists in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            return words;
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Loads the frequency levels of the system words stored in a JAR/ZIP
+     * file under the given root. The word lists are named after their SCOWL
+     * size level, from 10 for the most common words to 95 for the rarest,
+     * and the words of {@link #FREQUENT_WORDS} get level 0. Only the lists
+     * of the levels up to the given one are read, and the lists excluded by
+     * the user preferences are skipped.
+     * @param jarRoot Root of the jar file under which dictionary files are
+     * stored.
+     * @param maxLevel Highest level to load.
+     * @return Lowest level of each lower case word found.
+     * @throws java.io.IOException
+     */
+    public HashMap<String, Integer> loadWordLevels(String jarRoot, int maxLevel)
+            throws IOException {
+        HashMap<String, Integer> levels = new HashMap<String, Integer>();
+        if (PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.All)) {
+            return levels;
+        }
+        URL url = Thread.currentThread().getContextClassLoader().getResource(jarRoot);
+        if (url == null) {
+            throw new IOException("Dictionary root not found: " + jarRoot);
+        }
+        JarURLConnection jarConnection = (JarURLConnection) url.openConnection();
+        final JarFile jarFile = jarConnection.getJarFile();
+        try {
+            ArrayList<Future<String[]>> runs = new ArrayList<Future<String[]>>();
+            ArrayList<Integer> runLevels = new ArrayList<Integer>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry ent = entries.nextElement();
+                String name = ent.getName().toLowerCase();
+                int level = getLevel(name);
+                if (ent.isDirectory() || level < 0 || level > maxLevel || isExcluded(name)) {
+                    continue;
+                }
+                runLevels.add(level);
+                runs.add(executor.submit(new Callable<String[]>() {
+
+                    public String[] call() throws IOException {
+                        return readWords(ent.getName(), jarFile.getInputStream(ent));
+                    }
+                }));
+            }
+            List<String[]> loaded = get(runs);
+            for (int i = 0; i < loaded.size(); i++) {
+                Integer level = runLevels.get(i);
+                for (String word : loaded.get(i)) {
+                    Integer l = levels.get(word);
+                    if (l == null || l > level) {
+                        levels.put(word, level);
+                    }
+                }
+            }
+            return levels;
+        } finally {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * Frequency level of a word list from its lower case entry name.
+     * @return The level, -1 if the name tells none.
+     */
+    private static int getLevel(String name) {
+        if (name.endsWith("/" + FREQUENT_WORDS)) {
+            return 0;
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1 || name.length() - dot > 3) {
+            return -1;
+        }
+        for (int i = dot + 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(name.substring(dot + 1));
+    }
+
+    /**
+     * Loads the given dictionary files concurrently.
+     * @param files Paths of the dictionary files, one word per line.
+     * @return Sorted unique words of each file, keyed and ordered by the
+     * given paths.
+     * @throws java.io.IOException
+     */
+    public LinkedHashMap<String, ArrayList<String>> loadFiles(Collection<String> files)
+            throws IOException {
+        ArrayList<Future<String[]>> runs = new ArrayList<Future<String[]>>();
+        for (final String file : files) {
+            runs.add(executor.submit(new Callable<String[]>() {
+
+                public String[] call() throws IOException {
+                    return readWords(file, new FileInputStream(new File(file)));
+                }
+            }));
+        }
+        List<String[]> loaded = get(runs);
+        LinkedHashMap<String, ArrayList<String>> result =
+                new LinkedHashMap<String, ArrayList<String>>();
+        int i = 0;
+        for (String file : files) {
+            result.put(file, new ArrayList<String>(Arrays.asList(loaded.get(i++))));
+        }
+        return result;
+    }
+
+    /**
+     * Stops the pool threads. The loader cannot be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * If the given JAR entry is a word list excluded by the user preferences.
+     * @param name Lower case entry name.
+     * @return true if the entry is to be skipped.
+     */
+    private boolean isExcluded(String name) {
+        if (name.startsWith("meta-inf")) {
+            return true;
+        }
+        if (name.contains("american") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.American)) {
+            logger.info("Skipping American words list: " + name);
+            return true;
+        } else if (name.contains("british") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.British)) {
+            logger.info("Skipping British words list: " + name);
+            return true;
+        } else if (name.contains("canadian") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.Canadian)) {
+            logger.info("Skipping Canadian words list: " + name);
+            return true;
+        } else if (name.contains("english") && PrefsHelper.isDictIgnored(PrefsHelper.WordListTypes.English)) {
+            logger.info("Skipping English words list: " + name);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads one word per line from the given stream into a sorted run of
+     * unique lower case words. The stream is closed.
+     * @param source Name of the source, for logging.
+     * @param input Stream to read.
+     * @return Sorted unique words.
+     * @throws java.io.IOException
+     */
+    static String[] readWords(String source, InputStream input) throws IOException {
+        long start = System.currentTimeMillis();
+        ArrayList<String> words = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input, AbstractDictionary.CHAR_ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Store all words in lowercase
+                words.add(line.trim().toLowerCase());
+            }
+        } finally {
+            reader.close();
+        }
+        String[] run = words.toArray(new String[words.size()]);
+        Arrays.sort(run);
+        int n = 0;
+        for (int i = 0; i < run.length; i++) {
+            if (n == 0 || !run[i].equals(run[n - 1])) {
+                run[n++] = run[i];
+            }
+        }
+        if (n < run.length) {
+            run = Arrays.copyOf(run, n);
+        }
+        logger.info("Loaded " + n + " words from " + source + " in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return run;
+    }
+
+    /**
+     * Merges sorted runs into a single sorted list without duplicates.
+     * @param runs Sorted runs of unique words.
+     * @return Merged words.
+     */
+    static ArrayList<String> merge(List<String[]> runs) {
+        int total = 0;
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(Math.max(1, runs.size()));
+        for (String[] run : runs) {
+            total += run.length;
+            if (run.length > 0) {
+                queue.add(new Cursor(run));
+            }
+        }
+        ArrayList<String> merged = new ArrayList<String>(total);
+        String last = null;
+        while (!queue.isEmpty()) {
+            Cursor c = queue.poll();
+            String word = c.run[c.index];
+            if (!word.equals(last)) {
+                merged.add(word);
+                last = word;
+            }
+            if (++c.index < c.run.length) {
+                queue.add(c);
+            }
+        }
+        merged.trimToSize();
+        return merged;
+    }
+
+    private static List<String[]> get(List<Future<String[]>> futures) throws IOException {
+        ArrayList<String[]> results = new ArrayList<String[]>(futures.size());
+        try {
+            for (Future<String[]> f : futures) {
+                results.add(f.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            IOException ioe = new IOException("Interrupted while loading dictionaries.");
+            ioe.initCause(ex);
+            throw ioe;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            IOException ioe = new IOException("Could not load dictionary.");
+            ioe.initCause(ex.getCause());
+            throw ioe;
+        } finally {
+            for (Future<String[]> f : futures) {
+                f.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Position in a sorted run during the merge.
+     */
+    private static class Cursor implements Comparable<Cursor> {
+
+        private final String[] run;
+        private int index;
+
+        Cursor(String[] run) {
+            this.run = run;
+        }
+
+        public int compareTo(Cursor o) {
+            return run[index].compareTo(o.run[o.index]);
+        }
+    }
+}
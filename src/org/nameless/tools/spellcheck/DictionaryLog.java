@@ -0,0 +1,467 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-ahead log of the changes made to a custom dictionary file. Each line
+ * records a word added (<code>+word</code>) or removed (<code>-word</code>,
+ * a tombstone). The log lives next to the dictionary file and is replayed
+ * over it when the dictionary is loaded, until {@link #compact(List)}
+ * rewrites the dictionary file with the current words and empties the log.
+ * <p>
+ * Records are committed in groups: {@link #append(CharSequence)} only queues
+ * them, and the first thread calling {@link #commit(long)} writes and syncs
+ * everything queued so far in one go, while the threads whose records it
+ * covered return at once. Concurrent writers thus share the cost of a disk
+ * sync.
+ * <p>
+ * The log and the dictionary file are shared by every process that opens
+ * the dictionary. Appending, replaying and compacting hold a
+ * {@link FileLock} on a lock file next to them, and compacting reads the
+ * dictionary file and the log again under it, so that neither the edits made
+ * to the file by other programs nor the records of other processes are lost.
+ * @author bsodhi
+ */
+public class DictionaryLog implements Closeable {
+
+    /**
+     * Suffix added to the dictionary file name to name its log.
+     */
+    public static final String SUFFIX = ".log";
+    /**
+     * Suffix added to the dictionary file name to name its lock file.
+     */
+    public static final String LOCK_SUFFIX = ".lock";
+    /**
+     * Guards of the dictionary files opened in this JVM, by canonical path.
+     */
+    private static final ConcurrentHashMap<File, Guard> guards =
+            new ConcurrentHashMap<File, Guard>();
+
+    private final File dictionaryFile;
+    private final File file;
+    private final File lockFile;
+    /**
+     * Guards the writing of the log. Taken before the file lock.
+     */
+    private final Object flushLock = new Object();
+    /**
+     * Records queued but not yet written.
+     */
+    private StringBuilder pending = new StringBuilder();
+    /**
+     * Tickets of the last record appended and written.
+     */
+    private long appended;
+    private volatile long flushed;
+    /**
+     * Number of records in the log file, written or queued.
+     */
+    private int records;
+    /**
+     * Guard taken by {@link #lockFile()}.
+     */
+    private volatile Guard held;
+
+    /**
+     * Creates the log of the given dictionary file.
+     * @param dictionaryFile The dictionary file.
+     */
+    public DictionaryLog(File dictionaryFile) {
+        this.dictionaryFile = dictionaryFile;
+        this.file = new File(dictionaryFile.getPath() + SUFFIX);
+        this.lockFile = new File(dictionaryFile.getPath() + LOCK_SUFFIX);
+    }
+
+    /**
+     * The log file.
+     * @return Log file, it may not exist.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the records of the log file.
+     * @return The last change of each word in the log, true for an addition
+     * and false for a removal, in the order of the words' first records.
+     * @throws java.io.IOException
+     */
+    public LinkedHashMap<String, Boolean> replay() throws IOException {
+        Guard g = lock();
+        try {
+            return replayLocked();
+        } finally {
+            g.unlock();
+        }
+    }
+
+    private LinkedHashMap<String, Boolean> replayLocked() throws IOException {
+        LinkedHashMap<String, Boolean> changes = new LinkedHashMap<String, Boolean>();
+        if (!file.isFile()) {
+            synchronized (this) {
+                records = 0;
+            }
+            return changes;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), AbstractDictionary.CHAR_ENCODING));
+        int n = 0;
+        try {
+            // Only the records ended by a newline were written in full, a
+            // crashed write may leave the start of one at the end
+            String line;
+            while ((line = readRecord(in)) != null) {
+                if (line.length() < 2) {
+                    continue;
+                }
+                char op = line.charAt(0);
+                if (op == '+' || op == '-') {
+                    changes.put(line.substring(1), op == '+');
+                    n++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        synchronized (this) {
+            records = n;
+        }
+        return changes;
+    }
+
+    /**
+     * Reads a line ended by a newline.
+     * @return The line without its newline, or null at the end of the input
+     * or of the last complete line.
+     */
+    private static String readRecord(BufferedReader in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return null;
+    }
+
+    /**
+     * Cuts the start of a record left at the end of the log file by a crashed
+     * write, so that the records appended next are not joined to it.
+     */
+    private void truncateTornRecord() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long end = raf.length();
+            byte[] buf = new byte[4096];
+            while (end > 0) {
+                int n = (int) Math.min(buf.length, end);
+                raf.seek(end - n);
+                raf.readFully(buf, 0, n);
+                for (int i = n - 1; i >= 0; i--, end--) {
+                    if (buf[i] == '\n') {
+                        if (end < raf.length()) {
+                            raf.setLength(end);
+                        }
+                        return;
+                    }
+                }
+            }
+            raf.setLength(0);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Formats the record of a change.
+     * @param sb Buffer to append the record to.
+     * @param word Lower case word.
+     * @param added true for an addition, false for a removal.
+     */
+    public static void format(StringBuilder sb, String word, boolean added) {
+        sb.append(added ? '+' : '-').append(word).append('\n');
+    }
+
+    /**
+     * Queues records to be written by the next commit.
+     * @param recs Records made with {@link #format(StringBuilder, String, boolean)}.
+     * @return Ticket to pass to {@link #commit(long)}.
+     */
+    public synchronized long append(CharSequence recs) {
+        pending.append(recs);
+        for (int i = 0; i < recs.length(); i++) {
+            if (recs.charAt(i) == '\n') {
+                records++;
+            }
+        }
+        return ++appended;
+    }
+
+    /**
+     * Returns once the records of the given ticket are on disk, writing them
+     * along with any other queued records if no other thread has.
+     * @param ticket Ticket returned by {@link #append(CharSequence)}.
+     * @throws java.io.IOException
+     */
+    public void commit(long ticket) throws IOException {
+        if (flushed >= ticket) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (flushed >= ticket) {
+                return;
+            }
+            Guard g = lock();
+            try {
+                writePending();
+            } finally {
+                g.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the queued records, holding the flush lock and the file lock.
+     * The log is opened for each batch, as another process may have
+     * compacted it meanwhile.
+     */
+    private void writePending() throws IOException {
+        String batch;
+        long upTo;
+        synchronized (this) {
+            batch = pending.toString();
+            pending = new StringBuilder();
+            upTo = appended;
+        }
+        if (batch.length() > 0) {
+            try {
+                if (file.isFile()) {
+                    truncateTornRecord();
+                }
+                FileOutputStream out = new FileOutputStream(file, true);
+                try {
+                    out.write(batch.getBytes(AbstractDictionary.CHAR_ENCODING));
+                    out.getChannel().force(false);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException ex) {
+                // Queued again for the next commit
+                synchronized (this) {
+                    pending.insert(0, batch);
+                }
+                throw ex;
+            }
+        }
+        flushed = upTo;
+    }
+
+    /**
+     * Number of records in the log since it was last compacted.
+     * @return Record count.
+     */
+    public synchronized int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Rewrites the dictionary file and empties the log. Under the file lock,
+     * the queued records are written, then the dictionary file and the whole
+     * log, with the records of the other processes, are read again and
+     * passed to the given rewriter, whose words replace the file. The new
+     * file is moved over the old one before the log is emptied, so a crash in
+     * between only leaves records that change nothing when replayed. The
+     * caller must keep more records from being appended meanwhile.
+     * @param rewriter Makes the new words of the file.
+     * @return The words written.
+     * @throws java.io.IOException
+     */
+    public List<String> compact(Rewriter rewriter) throws IOException {
+        synchronized (flushLock) {
+            Guard g = lock();
+            try {
+                writePending();
+                String[] base = dictionaryFile.isFile()
+                        ? DictionaryLoader.readWords(dictionaryFile.getPath(),
+                        new FileInputStream(dictionaryFile))
+                        : new String[0];
+                List<String> words = rewriter.rewrite(base, replayLocked());
+                File dir = dictionaryFile.getAbsoluteFile().getParentFile();
+                File tmp = File.createTempFile(dictionaryFile.getName(), ".tmp", dir);
+                try {
+                    FileOutputStream fos = new FileOutputStream(tmp);
+                    try {
+                        Writer w = new OutputStreamWriter(fos, AbstractDictionary.CHAR_ENCODING);
+                        for (String word : words) {
+                            w.write(word);
+                            w.write('\n');
+                        }
+                        w.flush();
+                        fos.getChannel().force(true);
+                    } finally {
+                        fos.close();
+                    }
+                    Files.move(tmp.toPath(), dictionaryFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    tmp.delete();
+                }
+                synchronized (this) {
+                    records = 0;
+                }
+                if (file.exists() && !file.delete()) {
+                    new FileOutputStream(file).close();
+                }
+                return words;
+            } finally {
+                g.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns once all the records appended so far are on disk.
+     * @throws java.io.IOException
+     */
+    public void flush() throws IOException {
+        long ticket;
+        synchronized (this) {
+            ticket = appended;
+        }
+        commit(ticket);
+    }
+
+    /**
+     * Writes the queued records. The log file is only open while writing.
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Takes the lock of the dictionary file, so that no other thread or
+     * process changes the file or its log until {@link #unlockFile()}. The
+     * lock is reentrant: the holder may still load, replay and compact the
+     * file, through this log or another one.
+     * @throws java.io.IOException
+     */
+    public void lockFile() throws IOException {
+        held = lock();
+    }
+
+    /**
+     * Releases the lock taken by {@link #lockFile()}.
+     */
+    public void unlockFile() {
+        held.unlock();
+    }
+
+    /**
+     * Takes the lock of the dictionary file, first among the threads of this
+     * JVM and then among the processes.
+     */
+    private Guard lock() throws IOException {
+        File key = lockFile.getCanonicalFile();
+        Guard g = guards.get(key);
+        if (g == null) {
+            Guard n = new Guard(key);
+            g = guards.putIfAbsent(key, n);
+            if (g == null) {
+                g = n;
+            }
+        }
+        g.lock();
+        return g;
+    }
+
+    /**
+     * Builds the new words of a dictionary file when its log is compacted.
+     */
+    public interface Rewriter {
+
+        /**
+         * Makes the words to write.
+         * @param words Sorted words read from the dictionary file.
+         * @param changes Records of the log, as returned by {@link #replay()}.
+         * @return Sorted words to write.
+         * @throws java.io.IOException
+         */
+        List<String> rewrite(String[] words, LinkedHashMap<String, Boolean> changes)
+                throws IOException;
+    }
+
+    /**
+     * Lock of one dictionary file, reentrant within the JVM. {@link FileLock}
+     * is held per JVM, so it is only taken by the outermost holder.
+     */
+    private static class Guard {
+
+        private final File lockFile;
+        private final ReentrantLock lock = new ReentrantLock();
+        private RandomAccessFile raf;
+
+        Guard(File lockFile) {
+            this.lockFile = lockFile;
+        }
+
+        void lock() throws IOException {
+            lock.lock();
+            if (lock.getHoldCount() > 1) {
+                return;
+            }
+            try {
+                raf = new RandomAccessFile(lockFile, "rw");
+                raf.getChannel().lock();
+            } catch (IOException ex) {
+                closeFile();
+                lock.unlock();
+                throw ex;
+            }
+        }
+
+        void unlock() {
+            try {
+                if (lock.getHoldCount() == 1) {
+                    // Closing the channel releases the file lock
+                    closeFile();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void closeFile() {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                }
+                raf = null;
+            }
+        }
+    }
+}
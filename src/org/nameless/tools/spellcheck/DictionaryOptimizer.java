@@ -0,0 +1,246 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * Compacts custom dictionary files. Over time a shared custom dictionary
+ * gathers duplicates, case variants and words the system dictionary has
+ * anyway, and its change log grows; each load pays for all of them. The
+ * optimizer rewrites the file sorted, in lower case and without duplicates,
+ * prunes the words of the system dictionary, folds the log in and reports
+ * what was saved.
+ * <p>
+ * Run from the command line with the dictionary files as arguments, it
+ * prunes them against the system dictionary of the current preferences.
+ * @author bsodhi
+ * @see Dictionary#prune(AbstractDictionary)
+ */
+public class DictionaryOptimizer {
+
+    private DictionaryOptimizer() {
+    }
+
+    /**
+     * Optimizes a loaded custom dictionary and its file.
+     * @param dictionary Custom dictionary loaded from a file.
+     * @param system Dictionary whose words are pruned.
+     * @return What was saved.
+     * @throws java.io.IOException
+     */
+    public static Report optimize(Dictionary dictionary, AbstractDictionary system)
+            throws IOException {
+        File file = dictionary.dictionaryFile;
+        if (file == null) {
+            throw new IllegalArgumentException("Dictionary has no file.");
+        }
+        Report r = new Report(file);
+        r.measure(true);
+        r.pruned = dictionary.prune(system);
+        r.measure(false);
+        return r;
+    }
+
+    /**
+     * Optimizes a custom dictionary file that is not loaded. The file is
+     * locked meanwhile, keeping the other processes using it from changing
+     * it.
+     * @param file The dictionary file.
+     * @param system Dictionary whose words are pruned.
+     * @return What was saved.
+     * @throws java.io.IOException
+     */
+    public static Report optimize(File file, AbstractDictionary system) throws IOException {
+        // Other processes may have the file open: hold its lock from the
+        // load to the rewrite, so that no change made meanwhile is missed
+        DictionaryLog guard = new DictionaryLog(file);
+        guard.lockFile();
+        try {
+            Dictionary d = new Dictionary();
+            d.loadFromFile(file);
+            try {
+                return optimize(d, system);
+            } finally {
+                d.close();
+            }
+        } finally {
+            guard.unlockFile();
+        }
+    }
+
+    /**
+     * Optimizes the dictionary files given as arguments against the system
+     * dictionary and prints what was saved.
+     * @param args Dictionary files.
+     * @throws java.io.IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DictionaryOptimizer <dictionary file>...");
+            System.exit(1);
+        }
+        DictionaryLoader loader = new DictionaryLoader();
+        AutomatonDictionary system = new AutomatonDictionary();
+        try {
+            system.loadFromSnapshot("dictionaries", DictionarySnapshot.getSnapshotFile(), loader);
+        } finally {
+            loader.shutdown();
+        }
+        for (String f : args) {
+            System.out.println(optimize(new File(f), system));
+        }
+    }
+
+    /**
+     * Sizes and load times of a dictionary file and its log before and after
+     * the optimization.
+     */
+    public static class Report {
+
+        /**
+         * Untimed loads run before the timed ones, so that the JIT and the
+         * page cache favor neither the before nor the after sample.
+         */
+        private static final int WARMUP_LOADS = 3;
+        /**
+         * Timed loads, of which the median is reported.
+         */
+        private static final int TIMED_LOADS = 5;
+
+        private final File file;
+        private int entriesBefore;
+        private int entriesAfter;
+        private int pruned;
+        private long bytesBefore;
+        private long bytesAfter;
+        private long loadNanosBefore;
+        private long loadNanosAfter;
+
+        Report(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Counts the entries of the file and its log and times reading them
+         * as a load does, taking the median of several warm loads.
+         */
+        void measure(boolean before) throws IOException {
+            DictionaryLog log = new DictionaryLog(file);
+            try {
+                int entries = countLines(file) + countLines(log.getFile());
+                long bytes = file.length() + log.getFile().length();
+                for (int i = 0; i < WARMUP_LOADS; i++) {
+                    load(log);
+                }
+                long[] times = new long[TIMED_LOADS];
+                for (int i = 0; i < times.length; i++) {
+                    long start = System.nanoTime();
+                    load(log);
+                    times[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                long nanos = times[times.length / 2];
+                if (before) {
+                    entriesBefore = entries;
+                    bytesBefore = bytes;
+                    loadNanosBefore = nanos;
+                } else {
+                    entriesAfter = entries;
+                    bytesAfter = bytes;
+                    loadNanosAfter = nanos;
+                }
+            } finally {
+                log.close();
+            }
+        }
+
+        private void load(DictionaryLog log) throws IOException {
+            DictionaryLoader.readWords(file.getPath(), new FileInputStream(file));
+            log.replay();
+        }
+
+        private static int countLines(File f) throws IOException {
+            if (!f.isFile()) {
+                return 0;
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(f), AbstractDictionary.CHAR_ENCODING));
+            int n = 0;
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.trim().length() > 0) {
+                        n++;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            return n;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Number of lines of the file and records of the log before.
+         */
+        public int getEntriesBefore() {
+            return entriesBefore;
+        }
+
+        /**
+         * Number of words in the file after.
+         */
+        public int getEntriesAfter() {
+            return entriesAfter;
+        }
+
+        /**
+         * Number of words pruned because the system dictionary has them.
+         */
+        public int getPruned() {
+            return pruned;
+        }
+
+        /**
+         * Number of duplicate entries, case variants and log records folded.
+         */
+        public int getDuplicates() {
+            return entriesBefore - entriesAfter - pruned;
+        }
+
+        public long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        public long getLoadNanosBefore() {
+            return loadNanosBefore;
+        }
+
+        public long getLoadNanosAfter() {
+            return loadNanosAfter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d -> %d entries (%d duplicates, %d in system dictionary),"
+                    + " %d -> %d bytes, load %.2f -> %.2f ms", file, entriesBefore, entriesAfter,
+                    getDuplicates(), pruned, bytesBefore, bytesAfter,
+                    loadNanosBefore / 1e6, loadNanosAfter / 1e6);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.nameless.tools.spellcheck.ui.PrefsHelper;
+
+/**
+ * Precompiled binary image of the system dictionary. The words loaded from
+ * the dictionaries JAR are compiled into a {@link WordAutomaton} once and
+ * saved to a file, which later runs map read-only with
+ * {@link FileChannel#map}. Loading then costs only a header check, and all
+ * the JVMs on a host using the same file share its physical pages.
+ * <p>
+ * The header carries a stamp made of the JAR location, size and modification
+ * time plus the word list preferences, so a snapshot built for a different
+ * JAR or for different preferences is ignored and rebuilt.
+ * <p>
+ * File layout: magic, version, stamp (UTF-8, length prefixed), root state
+ * offset, word count, automaton data length, automaton data.
+ * @author bsodhi
+ */
+public class DictionarySnapshot {
+
+    /**
+     * System property to override the directory holding the snapshots.
+     */
+    public static final String DIR_PROPERTY = "spellchecker.snapshot.dir";
+    private static final int MAGIC = 0x53504c44; // SPLD
+    private static final int VERSION = 1;
+    private static Logger logger = Logger.getLogger(DictionarySnapshot.class.getName());
+
+    /**
+     * File holding the snapshot of the system dictionary.
+     * @return Snapshot file, it may not exist yet.
+     */
+    public static File getSnapshotFile() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null) {
+            dir = System.getProperty("user.home") + File.separator + ".spellchecker";
+        }
+        return new File(dir, "system-dictionary.dafsa");
+    }
+
+    /**
+     * Computes the stamp identifying the system dictionary that would be
+     * loaded from the given JAR root with the current preferences.
+     * @param jarRoot Root of the dictionary files in the JAR.
+     * @return The stamp.
+     * @throws java.io.IOException
+     */
+    public static String getStamp(String jarRoot) throws IOException {
+        URL url = Thread.currentThread().getContextClassLoader().getResource(jarRoot);
+        if (url == null) {
+            throw new IOException("Dictionary root not found: " + jarRoot);
+        }
+        StringBuilder sb = new StringBuilder();
+        JarURLConnection jarConnection = (JarURLConnection) url.openConnection();
+        URL jarUrl = jarConnection.getJarFileURL();
+        sb.append(jarUrl).append('|');
+        if ("file".equals(jarUrl.getProtocol())) {
+            File jar = new File(URLDecoder.decode(jarUrl.getPath(), AbstractDictionary.CHAR_ENCODING));
+            sb.append(jar.length()).append('|').append(jar.lastModified());
+        } else {
+            sb.append(jarUrl.openConnection().getLastModified());
+        }
+        for (PrefsHelper.WordListTypes t : PrefsHelper.WordListTypes.values()) {
+            sb.append('|').append(PrefsHelper.isDictIgnored(t) ? '-' : '+').append(t);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Maps the given snapshot file if it exists and matches the given stamp.
+     * @param file Snapshot file.
+     * @param stamp Expected stamp.
+     * @return The mapped automaton or null if the file is missing or stale.
+     */
+    public static WordAutomaton load(File file, String stamp) {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+                logger.info("Ignoring snapshot with unknown format: " + file);
+                return null;
+            }
+            byte[] s = new byte[map.getShort() & 0xffff];
+            map.get(s);
+            if (!stamp.equals(new String(s, AbstractDictionary.CHAR_ENCODING))) {
+                logger.info("Ignoring stale snapshot: " + file);
+                return null;
+            }
+            int root = map.getInt();
+            int size = map.getInt();
+            int length = map.getInt();
+            if (map.remaining() != length) {
+                logger.info("Ignoring truncated snapshot: " + file);
+                return null;
+            }
+            if (root < 0 || root >= length || size < 0) {
+                logger.info("Ignoring corrupt snapshot: " + file);
+                return null;
+            }
+            ByteBuffer data = map.slice();
+            logger.info("Mapped dictionary snapshot " + file + ": " + size + " words.");
+            return new WordAutomaton(data, root, size);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not map snapshot " + file, ex);
+            return null;
+        } catch (RuntimeException ex) {
+            // E.g. a header cut short by a partial copy
+            logger.log(Level.WARNING, "Ignoring corrupt snapshot " + file, ex);
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the automaton to the given snapshot file. The data is first
+     * written to a temporary file which is then moved over the snapshot, so
+     * other JVMs never see a partially written file.
+     * @param file Snapshot file.
+     * @param stamp Stamp of the dictionary.
+     * @param automaton Compiled dictionary.
+     * @throws java.io.IOException
+     */
+    public static void write(File file, String stamp, WordAutomaton automaton)
+            throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        byte[] s = stamp.getBytes(AbstractDictionary.CHAR_ENCODING);
+        ByteBuffer data = automaton.getData();
+        ByteBuffer header = ByteBuffer.allocate(22 + s.length);
+        header.putInt(MAGIC).putInt(VERSION).putShort((short) s.length).put(s);
+        header.putInt(automaton.getRoot()).putInt(automaton.size()).putInt(data.remaining());
+        header.flip();
+
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                FileChannel channel = fos.getChannel();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            } finally {
+                fos.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Only left if writing or moving failed
+            tmp.delete();
+        }
+        logger.info("Wrote dictionary snapshot " + file);
+    }
+
+    /**
+     * Compiles the system dictionary for the current preferences into the
+     * snapshot file, so that the first start of the application does not have
+     * to. An alternative snapshot file can be given as the only argument.
+     * @param args Optional snapshot file.
+     * @throws java.io.IOException
+     */
+    public static void main(String[] args) throws IOException {
+        File file = args.length > 0 ? new File(args[0]) : getSnapshotFile();
+        AutomatonDictionary dict = new AutomatonDictionary();
+        dict.compileFromClasspathJar("dictionaries", file);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the files of custom dictionaries and reloads a dictionary when its
+ * file is changed by another program, e.g. a shared glossary updated by a
+ * team or edited by hand. Only the dictionary whose file changed is reloaded,
+ * on the thread of the watcher, and {@link Dictionary#reload()} swaps its new
+ * words in at once, so running checks are never blocked.
+ * <p>
+ * Editors often write a file in several steps, so a dictionary is reloaded
+ * once its file has been quiet for {@link #QUIET_PERIOD} ms. Changes made by
+ * the dictionary itself, like compacting its log, leave the file as the
+ * dictionary knows it and are ignored.
+ * @author bsodhi
+ */
+class DictionaryWatcher implements Runnable, Closeable {
+
+    /**
+     * Time a changed file must stay unchanged before it is reloaded, in ms.
+     */
+    static final long QUIET_PERIOD = 500;
+    private static Logger logger = Logger.getLogger(DictionaryWatcher.class.getName());
+
+    private final WatchService service;
+    /**
+     * Watched dictionaries by the absolute path of their file.
+     */
+    private final ConcurrentHashMap<Path, Dictionary> files = new ConcurrentHashMap<Path, Dictionary>();
+    /**
+     * Keys of the watched directories and the number of dictionaries in each.
+     */
+    private final HashMap<Path, WatchKey> keys = new HashMap<Path, WatchKey>();
+    private final HashMap<Path, Integer> counts = new HashMap<Path, Integer>();
+
+    /**
+     * Creates a watcher and starts its daemon thread.
+     * @throws java.io.IOException
+     */
+    DictionaryWatcher() throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this, "spell-checker-dictionary-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching the file of a dictionary. Dictionaries without a file
+     * are ignored.
+     * @param dictionary The dictionary.
+     * @throws java.io.IOException
+     */
+    synchronized void watch(Dictionary dictionary) throws IOException {
+        if (dictionary.dictionaryFile == null) {
+            return;
+        }
+        Path file = dictionary.dictionaryFile.toPath().toAbsolutePath().normalize();
+        Path dir = file.getParent();
+        if (files.put(file, dictionary) != null) {
+            return;
+        }
+        Integer n = counts.get(dir);
+        if (n == null) {
+            keys.put(dir, dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY));
+            n = 0;
+        }
+        counts.put(dir, n + 1);
+    }
+
+    /**
+     * Stops watching the file of a dictionary.
+     * @param dictionary The dictionary.
+     */
+    synchronized void unwatch(Dictionary dictionary) {
+        if (dictionary.dictionaryFile == null) {
+            return;
+        }
+        Path file = dictionary.dictionaryFile.toPath().toAbsolutePath().normalize();
+        Path dir = file.getParent();
+        if (!files.remove(file, dictionary)) {
+            return;
+        }
+        int n = counts.get(dir) - 1;
+        if (n == 0) {
+            counts.remove(dir);
+            keys.remove(dir).cancel();
+        } else {
+            counts.put(dir, n);
+        }
+    }
+
+    public void run() {
+        LinkedHashSet<Dictionary> due = new LinkedHashSet<Dictionary>();
+        // Other files of the watched directories do not delay the reloads
+        long deadline = 0;
+        while (true) {
+            WatchKey key;
+            try {
+                long wait = deadline - System.currentTimeMillis();
+                if (due.isEmpty()) {
+                    key = service.take();
+                } else if (wait > 0) {
+                    key = service.poll(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    key = null;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (ClosedWatchServiceException ex) {
+                return;
+            }
+            if (key == null) {
+                for (Dictionary d : due) {
+                    reload(d);
+                }
+                due.clear();
+                continue;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> e : key.pollEvents()) {
+                if (e.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, look at every file
+                    due.addAll(files.values());
+                    deadline = System.currentTimeMillis() + QUIET_PERIOD;
+                    continue;
+                }
+                Dictionary d = files.get(dir.resolve((Path) e.context()));
+                if (d != null) {
+                    due.add(d);
+                    deadline = System.currentTimeMillis() + QUIET_PERIOD;
+                }
+            }
+            key.reset();
+        }
+    }
+
+    /**
+     * Reloads a dictionary if it is still watched and its file changed.
+     */
+    private void reload(Dictionary dictionary) {
+        if (!files.containsValue(dictionary) || !dictionary.isFileChanged()) {
+            return;
+        }
+        try {
+            dictionary.reload();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not reload dictionary " + dictionary.dictionaryFile, ex);
+        }
+    }
+
+    /**
+     * Stops watching all files, and stops the thread.
+     * @throws java.io.IOException
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            files.clear();
+            keys.clear();
+            counts.clear();
+        }
+        service.close();
+    }
+}
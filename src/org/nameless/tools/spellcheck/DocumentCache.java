@@ -0,0 +1,94 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of the recently checked documents, kept paragraph by paragraph so
+ * that a re-check of an edited document only checks the paragraphs that
+ * changed. Each paragraph is identified by a fingerprint of its text.
+ * <p>
+ * The results are only valid for the dictionaries and settings they were
+ * found with, which {@link SpellChecker} describes by a stamp; a document
+ * checked with a different stamp is checked in full. The least recently
+ * checked documents are dropped beyond the capacity.
+ * @author bsodhi
+ * @see Recheck
+ */
+class DocumentCache {
+
+    private final LinkedHashMap<String, Document> documents;
+
+    /**
+     * Creates a cache.
+     * @param capacity Number of documents kept.
+     */
+    DocumentCache(final int capacity) {
+        documents = new LinkedHashMap<String, Document>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the results of a document if they were found with the given
+     * stamp.
+     * @param key Canonical path of the document.
+     * @param stamp Stamp of the dictionaries and settings.
+     * @return The results or null.
+     */
+    synchronized Document get(String key, Object stamp) {
+        Document d = documents.get(key);
+        return d != null && d.stamp.equals(stamp) ? d : null;
+    }
+
+    synchronized void put(String key, Document document) {
+        documents.put(key, document);
+    }
+
+    synchronized void clear() {
+        documents.clear();
+    }
+
+    /**
+     * Computes the fingerprint of a paragraph: a 64 bit FNV-1a hash of its
+     * chars, mixed with its length.
+     * @param text Text of the paragraph.
+     * @return The fingerprint.
+     */
+    static long fingerprint(CharSequence text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h ^ ((long) text.length() << 40);
+    }
+
+    /**
+     * Errors of every paragraph of a checked document.
+     */
+    static class Document {
+
+        final Object stamp;
+        /**
+         * Errors by the fingerprint of their paragraph, with offsets relative
+         * to it. Paragraphs without errors have an empty list.
+         */
+        final HashMap<Long, List<SpellingError>> paragraphs;
+
+        Document(Object stamp, HashMap<Long, List<SpellingError>> paragraphs) {
+            this.stamp = stamp;
+            this.paragraphs = paragraphs;
+        }
+    }
+}
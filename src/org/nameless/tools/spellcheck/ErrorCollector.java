@@ -0,0 +1,143 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Collects the spelling errors reported by concurrent
+ * {@link SpellCheckerTask}s, counting the occurrences of every error.
+ * <p>
+ * The errors go into a number of independent hash tables, or stripes, each
+ * with its own lock. A thread always uses the same stripe, so the tasks
+ * rarely wait for each other. The stripes are merged and sorted only when the
+ * errors are read, and the merged result is kept until more errors are
+ * added.
+ * @author bsodhi
+ */
+public class ErrorCollector {
+
+    private final Stripe[] stripes;
+    /**
+     * Last merged errors and the number of additions they include.
+     */
+    private SortedMap<String, Integer> merged;
+    private long mergedAdds = -1;
+
+    /**
+     * Creates a collector with a stripe per processor, at least two.
+     */
+    public ErrorCollector() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a collector for about the given number of concurrent threads.
+     * @param threads Number of threads adding errors.
+     */
+    public ErrorCollector(int threads) {
+        int n = 2;
+        while (n < threads) {
+            n <<= 1;
+        }
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Records an occurrence of the given error.
+     * @param error The misspelt word.
+     */
+    public void add(String error) {
+        Stripe s = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        synchronized (s) {
+            int[] count = s.counts.get(error);
+            if (count == null) {
+                s.counts.put(error, new int[]{1});
+            } else {
+                count[0]++;
+            }
+            s.adds++;
+        }
+    }
+
+    /**
+     * Returns the errors in their natural order with the number of times each
+     * one was added.
+     * @return Read-only map of the errors to their occurrences.
+     */
+    public synchronized SortedMap<String, Integer> getErrors() {
+        long adds = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                adds += s.adds;
+            }
+        }
+        if (adds != mergedAdds) {
+            TreeMap<String, Integer> m = new TreeMap<String, Integer>();
+            adds = 0;
+            for (Stripe s : stripes) {
+                synchronized (s) {
+                    for (Map.Entry<String, int[]> e : s.counts.entrySet()) {
+                        Integer c = m.get(e.getKey());
+                        int n = e.getValue()[0];
+                        m.put(e.getKey(), c == null ? n : c + n);
+                    }
+                    adds += s.adds;
+                }
+            }
+            merged = Collections.unmodifiableSortedMap(m);
+            mergedAdds = adds;
+        }
+        return merged;
+    }
+
+    /**
+     * Number of distinct errors.
+     * @return Error count.
+     */
+    public int size() {
+        return getErrors().size();
+    }
+
+    /**
+     * Number of times the given error was added.
+     * @param error The misspelt word.
+     * @return Occurrences, 0 if it is not an error.
+     */
+    public int getOccurrences(String error) {
+        Integer c = getErrors().get(error);
+        return c == null ? 0 : c;
+    }
+
+    /**
+     * Removes all the errors.
+     */
+    public synchronized void clear() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.counts.clear();
+                s.adds = 0;
+            }
+        }
+        merged = null;
+        mergedAdds = -1;
+    }
+
+    /**
+     * Errors added by the threads mapped to one stripe.
+     */
+    private static class Stripe {
+
+        private final HashMap<String, int[]> counts = new HashMap<String, int[]>();
+        private long adds;
+    }
+}
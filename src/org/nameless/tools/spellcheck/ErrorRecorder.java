@@ -0,0 +1,83 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the positional errors of a check on their way to the listener of
+ * the check, e.g. to store them in a {@link ResultStore}.
+ * @author bsodhi
+ */
+class ErrorRecorder implements BatchSpellingErrorListener {
+
+    private final SpellingErrorListener listener;
+    private final ArrayList<SpellingError> errors = new ArrayList<SpellingError>();
+    /**
+     * Set once an error came without a position, which makes the recorded
+     * errors incomplete.
+     */
+    private boolean incomplete;
+
+    /**
+     * @param listener Listener of the check.
+     */
+    ErrorRecorder(SpellingErrorListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Hands the given errors to a listener: as one batch to a
+     * {@link BatchSpellingErrorListener}, one word at a time to any other.
+     * @param errors Errors in document order.
+     * @param listener The listener.
+     */
+    static void deliver(List<SpellingError> errors, SpellingErrorListener listener) {
+        if (listener instanceof BatchSpellingErrorListener) {
+            if (!errors.isEmpty()) {
+                ((BatchSpellingErrorListener) listener).addErrors(errors);
+            }
+        } else {
+            for (SpellingError e : errors) {
+                listener.addWord(e.getWord());
+            }
+        }
+    }
+
+    public synchronized void addErrors(List<SpellingError> found) {
+        errors.addAll(found);
+        deliver(found, listener);
+    }
+
+    /**
+     * Passes an error without a position on to the listener. The recorded
+     * errors are then incomplete and must not be stored.
+     */
+    public synchronized void addWord(String text) {
+        incomplete = true;
+        listener.addWord(text);
+    }
+
+    /**
+     * Errors recorded so far, in document order.
+     * @return The errors, or null if some came without a position.
+     */
+    synchronized List<SpellingError> getErrors() {
+        return incomplete ? null : new ArrayList<SpellingError>(errors);
+    }
+
+    public int getCount() {
+        return listener.getCount();
+    }
+
+    public void clearErrors() {
+        listener.clearErrors();
+    }
+
+    public void writeErrorsToDocument() {
+        listener.writeErrorsToDocument();
+    }
+}
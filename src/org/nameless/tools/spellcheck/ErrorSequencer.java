@@ -0,0 +1,56 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Passes the errors found by the tasks of one check to a
+ * {@link BatchSpellingErrorListener} in the order of the work units. A batch
+ * completed ahead of its turn is held until all the earlier ones have been
+ * delivered; consecutive batches ready together are delivered as one.
+ * @author bsodhi
+ */
+class ErrorSequencer {
+
+    private final BatchSpellingErrorListener listener;
+    private final TreeMap<Integer, List<SpellingError>> pending =
+            new TreeMap<Integer, List<SpellingError>>();
+    private int next;
+
+    ErrorSequencer(BatchSpellingErrorListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Delivers the errors of the given work unit once its turn comes.
+     * @param sequence Sequence number of the unit, from 0.
+     * @param errors Modifiable list of the errors of the unit in document
+     * order, handed over to this sequencer.
+     */
+    synchronized void deliver(int sequence, List<SpellingError> errors) {
+        pending.put(sequence, errors);
+        if (sequence != next) {
+            return;
+        }
+        List<SpellingError> batch = null;
+        List<SpellingError> e;
+        while ((e = pending.remove(next)) != null) {
+            next++;
+            if (e.isEmpty()) {
+                continue;
+            }
+            if (batch == null) {
+                batch = e;
+            } else {
+                batch.addAll(e);
+            }
+        }
+        if (batch != null) {
+            listener.addErrors(batch);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+/**
+ * Phonetic key of English words after Lawrence Philips' Metaphone. Words that
+ * sound alike, such as "fone" and "phone", get the same key. Chars other than
+ * the letters A-Z are ignored.
+ * @author bsodhi
+ */
+public class Metaphone {
+
+    private Metaphone() {
+    }
+
+    /**
+     * Computes the phonetic key of a word.
+     * @param word Word in any case.
+     * @return Upper case key, "0" standing for "th"; empty if the word has no
+     * letters.
+     */
+    public static String encode(String word) {
+        return encode(word, false);
+    }
+
+    /**
+     * Spells a word by its sounds: its phonetic key with the vowels kept.
+     * Words of the same key, such as "fone", "phone" and "fine", can then be
+     * told apart by how far their sound spellings are; "fone" and "phone"
+     * are both spelled "FONE".
+     * @param word Word in any case.
+     * @return Upper case sound spelling; empty if the word has no letters.
+     */
+    public static String spell(String word) {
+        return encode(word, true);
+    }
+
+    private static String encode(String word, boolean vowels) {
+        char[] w = letters(word);
+        int n = w.length;
+        StringBuilder key = new StringBuilder(n);
+        if (n == 0) {
+            return "";
+        }
+        int i = 0;
+        // Silent or special initial letters
+        if (n > 1) {
+            char a = w[0];
+            char b = w[1];
+            if ((a == 'A' && b == 'E') || (b == 'N' && (a == 'G' || a == 'K' || a == 'P'))
+                    || (a == 'W' && b == 'R')) {
+                i = 1;
+            } else if (a == 'W' && b == 'H') {
+                key.append('W');
+                i = 2;
+            }
+        }
+        if (i == 0 && w[0] == 'X') {
+            key.append('S');
+            i = 1;
+        }
+        for (; i < n; i++) {
+            char c = w[i];
+            if (c == at(w, i - 1) && c != 'C') {
+                continue;
+            }
+            switch (c) {
+                case 'A':
+                case 'E':
+                case 'I':
+                case 'O':
+                case 'U':
+                    if (vowels) {
+                        key.append(c);
+                    } else if (i == 0) {
+                        key.append('A');
+                    }
+                    break;
+                case 'B':
+                    if (!(i == n - 1 && at(w, i - 1) == 'M')) {
+                        key.append('B');
+                    }
+                    break;
+                case 'C':
+                    if (at(w, i + 1) == 'I' && at(w, i + 2) == 'A') {
+                        key.append('X');
+                    } else if (at(w, i + 1) == 'H') {
+                        key.append(at(w, i - 1) == 'S' ? 'K' : 'X');
+                        i++;
+                    } else if (isFrontVowel(at(w, i + 1))) {
+                        if (at(w, i - 1) != 'S') {
+                            key.append('S');
+                        }
+                    } else {
+                        key.append('K');
+                    }
+                    break;
+                case 'D':
+                    if (at(w, i + 1) == 'G' && isFrontVowel(at(w, i + 2))) {
+                        key.append('J');
+                        i++;
+                    } else {
+                        key.append('T');
+                    }
+                    break;
+                case 'G':
+                    if (at(w, i + 1) == 'H') {
+                        if (i + 2 == n) {
+                            // As in "tough"
+                            key.append('F');
+                        } else if (isVowel(w[i + 2])) {
+                            key.append('K');
+                        }
+                        // Else silent as in "night"
+                        i++;
+                    } else if (at(w, i + 1) == 'N' && (i + 2 == n
+                            || (i + 4 == n && at(w, i + 2) == 'E' && at(w, i + 3) == 'D'))) {
+                        // Silent as in "sign", "signed"
+                    } else if (isFrontVowel(at(w, i + 1))) {
+                        key.append('J');
+                    } else {
+                        key.append('K');
+                    }
+                    break;
+                case 'H':
+                    if (isVowel(at(w, i + 1)) && "CSPTG".indexOf(at(w, i - 1)) < 0) {
+                        key.append('H');
+                    }
+                    break;
+                case 'K':
+                    if (at(w, i - 1) != 'C') {
+                        key.append('K');
+                    }
+                    break;
+                case 'P':
+                    key.append(at(w, i + 1) == 'H' ? 'F' : 'P');
+                    break;
+                case 'Q':
+                    key.append('K');
+                    break;
+                case 'S':
+                    if (at(w, i + 1) == 'H') {
+                        key.append('X');
+                        i++;
+                    } else if (at(w, i + 1) == 'I' && (at(w, i + 2) == 'O' || at(w, i + 2) == 'A')) {
+                        key.append('X');
+                    } else {
+                        key.append('S');
+                    }
+                    break;
+                case 'T':
+                    if (at(w, i + 1) == 'I' && (at(w, i + 2) == 'O' || at(w, i + 2) == 'A')) {
+                        key.append('X');
+                    } else if (at(w, i + 1) == 'H') {
+                        key.append('0');
+                        i++;
+                    } else if (!(at(w, i + 1) == 'C' && at(w, i + 2) == 'H')) {
+                        key.append('T');
+                    }
+                    break;
+                case 'V':
+                    key.append('F');
+                    break;
+                case 'W':
+                case 'Y':
+                    // A W or Y not before a vowel is part of the vowel
+                    if (vowels || isVowel(at(w, i + 1))) {
+                        key.append(c);
+                    }
+                    break;
+                case 'X':
+                    key.append("KS");
+                    break;
+                case 'Z':
+                    key.append('S');
+                    break;
+                default:
+                    // F, J, L, M, N, R
+                    key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    private static char[] letters(String word) {
+        char[] w = new char[word.length()];
+        int n = 0;
+        for (int i = 0; i < w.length; i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c >= 'A' && c <= 'Z') {
+                w[n++] = c;
+            }
+        }
+        char[] l = new char[n];
+        System.arraycopy(w, 0, l, 0, n);
+        return l;
+    }
+
+    private static char at(char[] w, int i) {
+        return i >= 0 && i < w.length ? w[i] : 0;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'A' || c == 'E' || c == 'I' || c == 'O' || c == 'U';
+    }
+
+    private static boolean isFrontVowel(char c) {
+        return c == 'E' || c == 'I' || c == 'Y';
+    }
+}
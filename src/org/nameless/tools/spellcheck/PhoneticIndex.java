@@ -0,0 +1,99 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Arrays;
+
+/**
+ * Immutable index of a word list by the {@link Metaphone} keys of the words,
+ * finding the sound-alike words of a misspelling in constant time per key.
+ * <p>
+ * It is kept in int arrays only: an open addressing table maps the hash of a
+ * key to a group, and the ids of the words of group <i>g</i> are
+ * <code>ids[starts[g]]</code> to <code>ids[starts[g + 1] - 1]</code>. Keys
+ * are kept as their hashes, so two keys with the same hash share a group;
+ * the callers verify the candidates anyway.
+ * @author bsodhi
+ */
+public class PhoneticIndex {
+
+    /**
+     * Key hash of each slot of the table.
+     */
+    private final int[] slotHashes;
+    /**
+     * Group of each slot, -1 for an empty slot.
+     */
+    private final int[] slotGroups;
+    private final int[] starts;
+    private final int[] ids;
+
+    /**
+     * Builds the index of the given words.
+     * @param words Words, indexed by their position in the array.
+     */
+    public PhoneticIndex(String[] words) {
+        // Sort the (hash, id) pairs to lay the groups out
+        long[] pairs = new long[words.length];
+        int n = 0;
+        for (int id = 0; id < words.length; id++) {
+            String key = Metaphone.encode(words[id]);
+            if (key.length() > 0) {
+                pairs[n++] = ((long) key.hashCode() << 32) | id;
+            }
+        }
+        Arrays.sort(pairs, 0, n);
+        ids = new int[n];
+        int[] s = new int[n + 1];
+        int groups = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || (pairs[i] >>> 32) != (pairs[i - 1] >>> 32)) {
+                s[groups++] = i;
+            }
+            ids[i] = (int) pairs[i];
+        }
+        s[groups] = n;
+        starts = Arrays.copyOf(s, groups + 1);
+        int c = 16;
+        while (c < groups * 2) {
+            c <<= 1;
+        }
+        slotHashes = new int[c];
+        slotGroups = new int[c];
+        Arrays.fill(slotGroups, -1);
+        for (int g = 0; g < groups; g++) {
+            int h = (int) (pairs[starts[g]] >>> 32);
+            int i = mix(h) & (c - 1);
+            while (slotGroups[i] >= 0) {
+                i = (i + 1) & (c - 1);
+            }
+            slotHashes[i] = h;
+            slotGroups[i] = g;
+        }
+    }
+
+    /**
+     * Finds the words having the given phonetic key.
+     * @param key Key as returned by {@link Metaphone#encode(String)}.
+     * @return Ids of the words, possibly including some of another key with
+     * the same hash. Empty if there are none.
+     */
+    public int[] lookup(String key) {
+        int h = key.hashCode();
+        int m = slotGroups.length - 1;
+        for (int i = mix(h) & m; slotGroups[i] >= 0; i = (i + 1) & m) {
+            if (slotHashes[i] == h) {
+                int g = slotGroups[i];
+                return Arrays.copyOfRange(ids, starts[g], starts[g + 1]);
+            }
+        }
+        return new int[0];
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.nameless.tools.spellcheck.io.LineTextSource;
+import org.nameless.tools.spellcheck.io.TextSource;
+
+/**
+ * One check of a document against the results of its previous check. As a
+ * {@link TextSource} it reads the paragraphs of the document and passes on
+ * only those whose fingerprint is not in the previous results; as a
+ * {@link BatchSpellingErrorListener} it takes the errors found in them.
+ * {@link #deliver(SpellingErrorListener, Object)} then hands the errors of
+ * all the paragraphs, reused or found, to the actual listener in document
+ * order.
+ * <p>
+ * The lines read from a {@link LineTextSource} are joined into paragraphs,
+ * cut only where the check of the whole text would not carry anything over
+ * the cut: after a delimiter and, when compound words are looked for, where
+ * the pending compound word is flushed. The errors of a paragraph then
+ * depend on its text only, and are the same as those of the whole text.
+ * @author bsodhi
+ * @see DocumentCache
+ */
+class Recheck implements TextSource, BatchSpellingErrorListener {
+
+    private final LineTextSource source;
+    /**
+     * Results of the previous check, null if there are none.
+     */
+    private final DocumentCache.Document previous;
+    private final WordTokenizer tokenizer;
+    /**
+     * Index of the check when compound words are looked for, else null.
+     */
+    private final WordIndex compoundIndex;
+    /**
+     * Line read from the source but not yet joined into a paragraph, and
+     * its offset.
+     */
+    private String next;
+    private long nextOffset;
+    /**
+     * Offsets in the document of the paragraph being read and of the
+     * paragraph last passed on.
+     */
+    private long paragraphOffset;
+    private long offset;
+    /**
+     * Fingerprints and offsets of the paragraphs read so far.
+     */
+    private long[] fingerprints = new long[64];
+    private long[] offsets = new long[64];
+    /**
+     * Errors of the paragraphs read so far.
+     */
+    private final ArrayList<List<SpellingError>> errors = new ArrayList<List<SpellingError>>();
+    /**
+     * Document paragraph of each paragraph passed on, by the sequence number
+     * it gets from the {@link WorkPartitioner}.
+     */
+    private int[] passed = new int[64];
+    private int passedCount;
+    private int count;
+    /**
+     * Errors added without a position.
+     */
+    private final ArrayList<String> words = new ArrayList<String>();
+
+    /**
+     * @param source Source of the lines of the document.
+     * @param previous Results of the previous check or null.
+     * @param tokenizer Tokenizer of the check.
+     * @param compoundIndex Index of the check when compound words are looked
+     * for, null otherwise.
+     */
+    Recheck(LineTextSource source, DocumentCache.Document previous,
+            WordTokenizer tokenizer, WordIndex compoundIndex) {
+        this.source = source;
+        this.previous = previous;
+        this.tokenizer = tokenizer;
+        this.compoundIndex = compoundIndex;
+    }
+
+    public String nextChunk() throws IOException {
+        String chunk;
+        while ((chunk = nextParagraph()) != null) {
+            long fp = DocumentCache.fingerprint(chunk);
+            List<SpellingError> cached = previous == null ? null : previous.paragraphs.get(fp);
+            synchronized (this) {
+                int p = errors.size();
+                if (p == fingerprints.length) {
+                    fingerprints = Arrays.copyOf(fingerprints, p * 2);
+                    offsets = Arrays.copyOf(offsets, p * 2);
+                }
+                fingerprints[p] = fp;
+                offsets[p] = paragraphOffset;
+                if (cached != null) {
+                    errors.add(cached);
+                    continue;
+                }
+                errors.add(new ArrayList<SpellingError>());
+                if (passedCount == passed.length) {
+                    passed = Arrays.copyOf(passed, passedCount * 2);
+                }
+                passed[passedCount++] = p;
+            }
+            offset = paragraphOffset;
+            return chunk;
+        }
+        return null;
+    }
+
+    /**
+     * Joins the lines of the source up to the next place where the text can
+     * be cut without changing the errors found.
+     * @return Text of the paragraph, null at the end of the source.
+     */
+    private String nextParagraph() throws IOException {
+        String line = next;
+        if (line != null) {
+            paragraphOffset = nextOffset;
+            next = null;
+        } else {
+            line = source.nextChunk();
+            paragraphOffset = source.getOffset();
+        }
+        if (line == null || source.isParagraphEnd()) {
+            return line;
+        }
+        StringBuilder text = new StringBuilder(line);
+        boolean flushed = isFlushed(line, true);
+        while ((line = source.nextChunk()) != null) {
+            if (flushed && tokenizer.isDelimiter(text.charAt(text.length() - 1))
+                    || startsWithKnown(text, line)) {
+                next = line;
+                nextOffset = source.getOffset();
+                break;
+            }
+            text.append(line);
+            flushed = isFlushed(line, flushed);
+            if (source.isParagraphEnd()) {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Tells if the pending compound word is flushed at the end of a line.
+     * @param line The line.
+     * @param flushed If the pending compound word is flushed before the line.
+     * @return true if nothing is carried over the end of the line.
+     */
+    private boolean isFlushed(String line, boolean flushed) {
+        if (compoundIndex == null) {
+            return true;
+        }
+        WordTokenizer.Token token = tokenizer.tokenize(line);
+        while (token.next()) {
+            flushed = token.endsWithPunctuation()
+                    || WorkPartitioner.isKnown(compoundIndex, token);
+        }
+        return flushed;
+    }
+
+    /**
+     * Tells if a line can be cut from the text before it because the pending
+     * compound word is flushed before its first word.
+     */
+    private boolean startsWithKnown(StringBuilder text, String line) {
+        if (compoundIndex == null || !tokenizer.isDelimiter(text.charAt(text.length() - 1))) {
+            return false;
+        }
+        WordTokenizer.Token token = tokenizer.tokenize(line);
+        return token.next() && WorkPartitioner.isKnown(compoundIndex, token);
+    }
+
+    /**
+     * Every chunk passed on is checked and reused as a whole.
+     */
+    public boolean isParagraphEnd() {
+        return true;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void close() throws IOException {
+        source.close();
+    }
+
+    public synchronized void addErrors(List<SpellingError> found) {
+        for (SpellingError e : found) {
+            errors.get(passed[e.getParagraph()]).add(e);
+        }
+        count += found.size();
+    }
+
+    /**
+     * Records an error without a position, for callers using the plain
+     * listener contract. Such errors are delivered after the others and are
+     * nothing is kept for the next check, as they belong to no paragraph.
+     */
+    public synchronized void addWord(String text) {
+        words.add(text);
+        count++;
+    }
+
+    /**
+     * Number of errors found in the paragraphs checked.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public void clearErrors() {
+    }
+
+    public void writeErrorsToDocument() {
+    }
+
+    /**
+     * Number of paragraphs whose results were reused.
+     * @return Reused paragraphs.
+     */
+    synchronized int getReusedCount() {
+        return errors.size() - passedCount;
+    }
+
+    /**
+     * Number of paragraphs in the document.
+     * @return Paragraph count.
+     */
+    synchronized int getParagraphCount() {
+        return errors.size();
+    }
+
+    /**
+     * Hands the errors of the whole document to the given listener, in
+     * document order, and returns the results to keep for the next check.
+     * Must be called once all the paragraphs have been checked.
+     * @param listener Listener of the check.
+     * @param stamp Stamp of the dictionaries and settings of the check.
+     * @return Results of this check, or null if some errors came without a
+     * position and the results are thus incomplete.
+     */
+    synchronized DocumentCache.Document deliver(SpellingErrorListener listener, Object stamp) {
+        HashMap<Long, List<SpellingError>> paragraphs =
+                new HashMap<Long, List<SpellingError>>(errors.size() * 2);
+        ArrayList<SpellingError> all = new ArrayList<SpellingError>();
+        for (int p = 0; p < errors.size(); p++) {
+            List<SpellingError> e = errors.get(p);
+            paragraphs.put(fingerprints[p], e);
+            for (SpellingError x : e) {
+                // Reused errors may come from elsewhere in the document
+                all.add(x.getParagraph() == p && x.getParagraphOffset() == offsets[p] ? x
+                        : new SpellingError(x.getWord(), p, offsets[p], x.getStart(), x.getEnd()));
+            }
+        }
+        ErrorRecorder.deliver(all, listener);
+        for (String w : words) {
+            listener.addWord(w);
+        }
+        return words.isEmpty() ? new DocumentCache.Document(stamp, paragraphs) : null;
+    }
+}
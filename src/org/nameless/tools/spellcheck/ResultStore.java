@@ -0,0 +1,294 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local store of the errors found in checked files, so that a file checked
+ * again with the same dictionaries and settings, possibly by another run,
+ * gets its errors without being extracted or tokenized.
+ * <p>
+ * An entry is keyed by the SHA-256 digest of the content of the file and of
+ * the stamp that {@link SpellChecker} makes of the dictionaries and settings,
+ * and is kept in a file of its own named after the key. Entries are written
+ * to a temporary file first and then moved in place, so concurrent runs
+ * sharing the directory never read a partial entry. Entries older than the
+ * maximum age are deleted, and the least recently used ones once the store
+ * grows beyond its maximum size.
+ * <p>
+ * Entry layout: magic, version, error count and for each error its word
+ * (modified UTF-8), paragraph, paragraph offset in the document, and start
+ * and end offsets in the paragraph.
+ * @author bsodhi
+ */
+public class ResultStore {
+
+    /**
+     * System property to override the directory holding the results.
+     */
+    public static final String DIR_PROPERTY = "spellchecker.results.dir";
+    /**
+     * Default maximum size of the store.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    /**
+     * Default maximum age of an entry.
+     */
+    public static final long DEFAULT_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+    private static final int MAGIC = 0x53504c52; // SPLR
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".res";
+    /**
+     * Number of entries written between two evictions.
+     */
+    private static final int EVICT_INTERVAL = 32;
+    private static Logger logger = Logger.getLogger(ResultStore.class.getName());
+
+    private final File dir;
+    private final long maxBytes;
+    private final long maxAge;
+    private int puts;
+
+    /**
+     * Creates a store in the default directory with the default limits.
+     */
+    public ResultStore() {
+        this(getDefaultDirectory(), DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Creates a store.
+     * @param dir Directory of the entries, created when needed.
+     * @param maxBytes Maximum total size of the entries.
+     * @param maxAge Maximum age of an entry since it was last used, in ms.
+     */
+    public ResultStore(File dir, long maxBytes, long maxAge) {
+        if (maxBytes < 0 || maxAge < 0) {
+            throw new IllegalArgumentException("maxBytes: " + maxBytes + ", maxAge: " + maxAge);
+        }
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Default directory of the store.
+     * @return The directory, it may not exist yet.
+     */
+    public static File getDefaultDirectory() {
+        String d = System.getProperty(DIR_PROPERTY);
+        if (d == null) {
+            d = System.getProperty("user.home") + File.separator + ".spellchecker"
+                    + File.separator + "results";
+        }
+        return new File(d);
+    }
+
+    /**
+     * Computes the key of the given file checked with the given stamp.
+     * @param file The file.
+     * @param stamp Stamp of the dictionaries and settings.
+     * @return The key.
+     * @throws java.io.IOException
+     */
+    public String key(File file, String stamp) throws IOException {
+        MessageDigest md = newDigest();
+        update(md, file);
+        md.update((byte) 0);
+        md.update(stamp.getBytes(AbstractDictionary.CHAR_ENCODING));
+        return toHex(md.digest());
+    }
+
+    /**
+     * Computes the SHA-256 digest of the content of a file, e.g. of a
+     * dictionary for the stamp of the results.
+     * @param file The file.
+     * @return Digest in hex.
+     * @throws java.io.IOException
+     */
+    public static String digest(File file) throws IOException {
+        MessageDigest md = newDigest();
+        update(md, file);
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void update(MessageDigest md, File file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = new FileInputStream(file);
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads the errors stored under the given key.
+     * @param key Key of the entry.
+     * @return The errors in document order, or null if there is no such
+     * entry or it cannot be read.
+     */
+    public List<SpellingError> get(String key) {
+        File f = new File(dir, key + SUFFIX);
+        if (!f.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    logger.info("Ignoring result entry with unknown format: " + f);
+                    return null;
+                }
+                int n = in.readInt();
+                ArrayList<SpellingError> errors = new ArrayList<SpellingError>(n);
+                for (int i = 0; i < n; i++) {
+                    errors.add(new SpellingError(in.readUTF(), in.readInt(), in.readLong(),
+                            in.readInt(), in.readInt()));
+                }
+                // Recently used entries are evicted last
+                f.setLastModified(System.currentTimeMillis());
+                return errors;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read result entry " + f, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the errors of a file, evicting old entries now and then. Errors
+     * writing the entry are only logged.
+     * @param key Key of the entry.
+     * @param errors The errors in document order.
+     */
+    public void put(String key, List<SpellingError> errors) {
+        File f = new File(dir, key + SUFFIX);
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create directory " + dir);
+            }
+            File tmp = File.createTempFile(key, ".tmp", dir);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(errors.size());
+                for (SpellingError e : errors) {
+                    out.writeUTF(e.getWord());
+                    out.writeInt(e.getParagraph());
+                    out.writeLong(e.getParagraphOffset());
+                    out.writeInt(e.getStart());
+                    out.writeInt(e.getEnd());
+                }
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), f.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                tmp.delete();
+                throw ex;
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not write result entry " + f, ex);
+        }
+        boolean evict;
+        synchronized (this) {
+            evict = puts++ % EVICT_INTERVAL == 0;
+        }
+        if (evict) {
+            evict();
+        }
+    }
+
+    /**
+     * Deletes the entries older than the maximum age, then the least
+     * recently used ones until the store is within its maximum size.
+     */
+    public void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        // Newest first
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            public int compare(Integer a, Integer b) {
+                return modified[a] > modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+            }
+        });
+        long now = System.currentTimeMillis();
+        long bytes = 0;
+        int deleted = 0;
+        for (Integer i : order) {
+            File f = files[i];
+            if (!f.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            if (now - modified[i] > maxAge) {
+                if (f.delete()) {
+                    deleted++;
+                }
+                continue;
+            }
+            bytes += f.length();
+            if (bytes > maxBytes && f.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Evicted " + deleted + " result entries from " + dir);
+        }
+    }
+}
@@ -9,16 +9,31 @@
 
 package org.nameless.tools.spellcheck;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.nameless.tools.spellcheck.io.*;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.nameless.tools.spellcheck.ui.PrefsHelper;
@@ -27,18 +42,104 @@ import org.nameless.tools.spellcheck.ui.PrefsHelper;
  * This is the main spell checker class. It takes the input file and extracts
  * the text from it. Then it spawns multiple concurrent threads to execute
  * {@link SpellCheckerTask}s giving each of them a chunk from the whole text.
+ * <p>
+ * The tasks run on a pool owned by the spell checker and reused by every
+ * check, with as many threads as there are processors unless configured
+ * otherwise. The pool threads are daemons; {@link #close()} stops them.
+ * <p>
+ * Many documents can be checked at the same time with
+ * {@link #submit(String, SpellingErrorListener)}. Each document is read and
+ * parsed on a thread of its own, a virtual thread when the JVM has them, and
+ * only hands its work units to the pool, so documents waiting for I/O do not
+ * take up the pool threads.
+ * <p>
+ * With {@link #setRecentDocumentCount(int)} the spell checker keeps the
+ * results of the last few documents paragraph by paragraph, and a re-check of
+ * an edited document checks only the paragraphs that changed. With
+ * {@link #setResultStore(ResultStore)} the errors of every checked file are
+ * also kept on disk, for the runs checking the same file again.
+ * <p>
+ * With {@link #setWatchingDictionaries(boolean)} the custom dictionary files
+ * are watched, and a dictionary whose file is changed by another program is
+ * reloaded in the background and swapped in without stopping the checks.
  * @author bsodhi
  */
-public class SpellChecker {
+public class SpellChecker implements Closeable {
 
     private Logger logger = Logger.getLogger(getClass().getName());
-    private final BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>(50);
-    private int corePoolSize = 2;
-    private int maxPoolSize = 2;
-    private long keepAliveTime = 10L;
-    private TimeUnit unit = TimeUnit.MILLISECONDS;
-    private Dictionary sysDictionary = new Dictionary();
+    /**
+     * Number of work units per pool thread that a check may have queued or
+     * running, which keeps the reader from getting too far ahead.
+     */
+    private static final int UNITS_PER_THREAD = 4;
+    /**
+     * System property which, set to false, turns the use of virtual threads
+     * for the submitted documents off.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "spellchecker.virtualThreads";
+    /**
+     * Number of documents read at the same time per processor when virtual
+     * threads are not available.
+     */
+    private static final int DOCUMENTS_PER_PROCESSOR = 4;
+    /**
+     * Highest frequency level of the system word lists whose words rank the
+     * suggestions; the rarer words all rank alike.
+     */
+    private static final int SUGGESTION_LEVELS = 50;
+    /**
+     * Number of file digests kept for the stamps of the results.
+     */
+    private static final int MAX_DIGESTS = 64;
+    private final ThreadPoolExecutor executor;
+    /**
+     * Runs the submitted documents, created on first use.
+     */
+    private ExecutorService documentExecutor;
+    private int workUnitSize = WorkPartitioner.DEFAULT_TARGET_SIZE;
+    private AutomatonDictionary sysDictionary = new AutomatonDictionary();
     private ArrayList<Dictionary> customDicts = new ArrayList<Dictionary>();
+    /**
+     * Custom dictionaries kept off the heap.
+     */
+    private ArrayList<ArenaDictionary> arenaDicts = new ArrayList<ArenaDictionary>();
+    private final DictionaryLoader loader;
+    private final WordIndex index;
+    /**
+     * Suggestion index over the same dictionaries as {@link #index}, built on
+     * first use.
+     */
+    private SuggestionIndex suggestions;
+    private final ArrayList<TokenFilter> userFilters = new ArrayList<TokenFilter>();
+    private final ArrayList<Integer> userFilterCosts = new ArrayList<Integer>();
+    private boolean verdictCacheShared;
+    /**
+     * Verdict cache shared by the checks when enabled, and the filter setting
+     * it was created for.
+     */
+    private VerdictCache sharedVerdicts;
+    private boolean sharedVerdictsIgnoreUpperCase;
+    /**
+     * Results of the recently checked documents, null if they are not kept.
+     */
+    private DocumentCache recentDocuments;
+    /**
+     * Store of the results across runs, null if there is none.
+     */
+    private ResultStore resultStore;
+    /**
+     * Digests of the dictionary files and logs, by path, length and time
+     * stamp.
+     */
+    private final HashMap<String, String> digests = new HashMap<String, String>();
+    /**
+     * Watcher of the custom dictionary files, null if they are not watched.
+     */
+    private DictionaryWatcher watcher;
+    /**
+     * Stamp of the loaded system dictionary.
+     */
+    private final String systemStamp;
     public static String[] DELIMS_UNICODE = {
         "u000A", "u000B", "u000C", "u000D", "u2028", "u2029", "u0013", "u2003",/*Whitespace*/
         "u003A",/*Colon :*/
@@ -64,8 +165,49 @@ public class SpellChecker {
      * @throws java.io.IOException
      */
     public SpellChecker() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the instance of this class loading the dictionaries with the
+     * given number of threads.
+     * @param loaderThreads Number of word lists loaded concurrently.
+     * @throws java.io.IOException
+     */
+    public SpellChecker(int loaderThreads) throws IOException {
+        this(loaderThreads, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the instance of this class loading the dictionaries with the
+     * given number of threads and checking the spellings with a pool of the
+     * given size.
+     * @param loaderThreads Number of word lists loaded concurrently.
+     * @param parallelism Number of threads checking the spellings.
+     * @throws java.io.IOException
+     */
+    public SpellChecker(int loaderThreads, int parallelism) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+        }
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "spell-checker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        loader = new DictionaryLoader(loaderThreads);
         // Load the main system sictionary
-        sysDictionary.loadFromClasspathJar("dictionaries");
+        systemStamp = DictionarySnapshot.getStamp("dictionaries");
+        sysDictionary.loadFromSnapshot("dictionaries",
+                DictionarySnapshot.getSnapshotFile(), loader);
+        index = new WordIndex(sysDictionary);
     }
 
     /**
@@ -78,7 +220,7 @@ public class SpellChecker {
      * @throws java.io.IOException
      */
     public void addToDefaultCustomDictionary(String text) throws IOException {
-        for (Dictionary dict : customDicts) {
+        for (Dictionary dict : copyCustomDictionaries()) {
             if (Dictionary.CUSTOM_DEF == dict.getType()) {
                 dict.add(text);
                 break;
@@ -88,7 +230,9 @@ public class SpellChecker {
 
     /**
      * This is the main method that a client will call to perform the spelling
-     * check on a text file.
+     * check on a text file. If the listener is a
+     * {@link BatchSpellingErrorListener} it gets every error with its
+     * position, in document order.
      * @param inputFile Input file to be spell-checked.
      * @param listener Spelling error listener.
      * @throws java.io.IOException
@@ -96,29 +240,191 @@ public class SpellChecker {
     public void checkSpelling(String inputFile, 
             SpellingErrorListener listener) throws IOException {
 
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(corePoolSize, 
-            maxPoolSize, keepAliveTime, unit, workQueue, 
-            new ThreadPoolExecutor.CallerRunsPolicy());
-        
-        ArrayList<String> paras = MSWordUtil.extractWords(inputFile);
-        ArrayList<Dictionary> dicts = new ArrayList<Dictionary>();
-        dicts.add(sysDictionary);
-        dicts.addAll(customDicts);
-        for (String para : paras) {
-            executor.execute(new SpellCheckerTask(para, listener, dicts, getDelimiters()));
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("Spell checker is closed.");
         }
-        
-        executor.shutdown();
-        try {
-            // Wait for long enough time to let the process complete
-            executor.awaitTermination(30, TimeUnit.MINUTES);
-        } catch (InterruptedException ex) {
-            logger.log(Level.SEVERE, null, ex);
+        HashSet<Integer> delimiters = getDelimiters();
+        WordTokenizer tokenizer = new WordTokenizer(delimiters);
+        boolean ignoreUpperCase = PrefsHelper.isUpperCaseWordsIgnored();
+        boolean findCompoundWords = PrefsHelper.isFindCompoundWordsEnabled();
+        TokenFilter filter = createTokenFilter(ignoreUpperCase);
+        VerdictCache verdicts = getVerdictCache(ignoreUpperCase);
+        DocumentCache documents;
+        ResultStore store;
+        int filterCount;
+        synchronized (this) {
+            documents = recentDocuments;
+            store = resultStore;
+            filterCount = userFilters.size();
+        }
+        ErrorRecorder recorder = null;
+        String storeKey = null;
+        String storeStamp = store == null ? null : getResultStamp(delimiters,
+                ignoreUpperCase, findCompoundWords, documents != null);
+        if (storeStamp != null) {
+            storeKey = store.key(new File(inputFile), storeStamp);
+            List<SpellingError> stored = store.get(storeKey);
+            if (stored != null) {
+                logger.info("Using the stored results of " + inputFile);
+                ErrorRecorder.deliver(stored, listener);
+                listener.writeErrorsToDocument();
+                logger.info("Error count: "+listener.getCount());
+                return;
+            }
+            listener = recorder = new ErrorRecorder(listener);
+        }
+        if (documents == null) {
+            check(inputFile, MSWordUtil.openTextSource(inputFile), listener,
+                    tokenizer, filter, verdicts, findCompoundWords);
+        } else {
+            // Read before checking, so that results found while the
+            // dictionaries change are not reused
+            Object stamp = Arrays.asList(index.getVersion(), ignoreUpperCase,
+                    findCompoundWords, filterCount, delimiters);
+            String key = new File(inputFile).getCanonicalPath();
+            Recheck recheck = new Recheck(new LineTextSource(MSWordUtil.openTextSource(inputFile)),
+                    documents.get(key, stamp), tokenizer, findCompoundWords ? index : null);
+            check(inputFile, recheck, recheck, tokenizer, filter, verdicts, findCompoundWords);
+            DocumentCache.Document results = recheck.deliver(listener, stamp);
+            if (results != null) {
+                documents.put(key, results);
+            }
+            logger.info("Reused the results of " + recheck.getReusedCount() + " of "
+                    + recheck.getParagraphCount() + " paragraphs.");
+        }
+        List<SpellingError> recorded = recorder == null ? null : recorder.getErrors();
+        if (recorded != null) {
+            store.put(storeKey, recorded);
         }
         listener.writeErrorsToDocument();
         logger.info("Error count: "+listener.getCount());
     }
 
+    /**
+     * Checks the text of the given source with the pool, returning once all
+     * of it has been checked.
+     */
+    private void check(String inputFile, TextSource source, SpellingErrorListener listener,
+            WordTokenizer tokenizer, TokenFilter filter, VerdictCache verdicts,
+            boolean findCompoundWords) throws IOException {
+        // Chunks are checked as they are read, the permits keep the reader
+        // from getting too far ahead of the tasks.
+        int inFlight = executor.getMaximumPoolSize() * UNITS_PER_THREAD;
+        Semaphore permits = new Semaphore(inFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        ErrorSequencer sequencer = listener instanceof BatchSpellingErrorListener
+                ? new ErrorSequencer((BatchSpellingErrorListener) listener) : null;
+        boolean finished = false;
+        try {
+            WorkPartitioner partitioner = new WorkPartitioner(source, tokenizer,
+                    workUnitSize, findCompoundWords ? index : null);
+            WorkPartitioner.Segment[] unit;
+            int sequence = 0;
+            while (failure.get() == null && (unit = partitioner.nextUnit()) != null) {
+                permits.acquire();
+                SpellCheckerTask task = sequencer == null
+                        ? new SpellCheckerTask(unit, listener, index, tokenizer, filter)
+                        : new SpellCheckerTask(unit, sequence++, sequencer, listener,
+                        index, tokenizer, filter);
+                task.setVerdictCache(verdicts);
+                try {
+                    executor.execute(new UnitTask(task, permits, failure));
+                } catch (RuntimeException ex) {
+                    permits.release();
+                    throw ex;
+                }
+            }
+            // All the permits are back once every task has finished
+            permits.acquire(inFlight);
+            finished = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iex = new InterruptedIOException("Spelling check interrupted.");
+            iex.initCause(ex);
+            throw iex;
+        } finally {
+            if (!finished) {
+                // The tasks already started still read the source
+                permits.acquireUninterruptibly(inFlight);
+            }
+            source.close();
+        }
+        if (failure.get() != null) {
+            IOException iex = new IOException("Spelling check failed for " + inputFile);
+            iex.initCause(failure.get());
+            throw iex;
+        }
+    }
+
+    /**
+     * Checks the spellings of the given file in the background. The file is
+     * read on a thread of its own while the words are checked by the pool of
+     * this spell checker, so any number of documents may be submitted at the
+     * same time.
+     * @param inputFile Input file to be spell-checked.
+     * @param listener Spelling error listener for this file only.
+     * @return Future completing when the check is done, throwing the
+     * IOException of the check if it failed.
+     */
+    public Future<Void> submit(final String inputFile,
+            final SpellingErrorListener listener) {
+        return getDocumentExecutor().submit(new Callable<Void>() {
+
+            public Void call() throws IOException {
+                checkSpelling(inputFile, listener);
+                return null;
+            }
+        });
+    }
+
+    private synchronized ExecutorService getDocumentExecutor() {
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("Spell checker is closed.");
+        }
+        if (documentExecutor == null) {
+            documentExecutor = createVirtualThreadExecutor();
+        }
+        if (documentExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors() * DOCUMENTS_PER_PROCESSOR;
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                    30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "spell-checker-document-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            pool.allowCoreThreadTimeOut(true);
+            documentExecutor = pool;
+        }
+        return documentExecutor;
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task, looked up by
+     * reflection as it exists in Java 21 and later only.
+     * @return The executor or null if virtual threads are not available or
+     * turned off.
+     */
+    private ExecutorService createVirtualThreadExecutor() {
+        if (!Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "true"))) {
+            return null;
+        }
+        try {
+            ExecutorService es = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            logger.info("Using virtual threads for the submitted documents.");
+            return es;
+        } catch (Exception ex) {
+            logger.fine("Virtual threads not available: " + ex);
+            return null;
+        }
+    }
+
     /**
      * Adds a new custom dictionary.
      * @param dictFile
@@ -131,14 +437,456 @@ public class SpellChecker {
         }
         d.loadFromFile(new File(dictFile));
         logger.info("Added dictionary ["+dictFile+"]. Size "+d.getSize()+" words.");
-        customDicts.add(d);
+        synchronized (this) {
+            customDicts.add(d);
+        }
+        index.addDictionary(d);
+        synchronized (this) {
+            if (suggestions != null) {
+                suggestions.addDictionary(d);
+            }
+            if (watcher != null) {
+                watcher.watch(d);
+            }
+        }
     }
     
     /**
-     * Clears all the custom dictionaries from the list.
+     * Adds a large custom dictionary, such as a list of product terms, whose
+     * words are kept off the heap. See {@link ArenaDictionary}.
+     * @param dictFile Path of the dictionary file.
+     * @throws java.io.IOException
+     */
+    public void addArenaDictionary(String dictFile) throws IOException {
+        ArenaDictionary d = new ArenaDictionary();
+        d.setType(Dictionary.CUSTOM);
+        d.loadFromFile(new File(dictFile));
+        logger.info("Added dictionary ["+dictFile+"]. Size "+d.getSize()+" words.");
+        synchronized (this) {
+            arenaDicts.add(d);
+        }
+        index.addDictionary(d);
+        synchronized (this) {
+            if (suggestions != null) {
+                suggestions.addDictionary(d);
+            }
+        }
+    }
+
+    /**
+     * Adds several custom dictionaries, loading the files concurrently.
+     * @param dictFiles Paths of the dictionary files.
+     * @param defaultDict Path of the default custom dictionary, may be null.
+     * @throws java.io.IOException
+     */
+    public void addCustomDictionaries(Collection<String> dictFiles, String defaultDict)
+            throws IOException {
+        LinkedHashMap<String, ArrayList<String>> loaded = loader.loadFiles(dictFiles);
+        ArrayList<Dictionary> added = new ArrayList<Dictionary>();
+        for (Map.Entry<String, ArrayList<String>> e : loaded.entrySet()) {
+            Dictionary d = new Dictionary();
+            if (e.getKey().equals(defaultDict)) {
+                d.setType(Dictionary.CUSTOM_DEF);
+            }
+            d.loadSorted(new File(e.getKey()), e.getValue());
+            logger.info("Added dictionary ["+e.getKey()+"]. Size "+d.getSize()+" words.");
+            added.add(d);
+        }
+        synchronized (this) {
+            customDicts.addAll(added);
+        }
+        index.addDictionaries(added);
+        synchronized (this) {
+            if (suggestions != null) {
+                suggestions.addDictionaries(added);
+            }
+            if (watcher != null) {
+                for (Dictionary d : added) {
+                    watcher.watch(d);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears all the custom dictionaries from the list, closing them.
      */
     public void clearCustomDictionaries() {
-        customDicts.clear();
+        synchronized (this) {
+            if (watcher != null) {
+                for (Dictionary d : customDicts) {
+                    watcher.unwatch(d);
+                }
+            }
+        }
+        closeCustomDictionaries();
+        synchronized (this) {
+            if (suggestions != null) {
+                suggestions.removeDictionaries(customDicts);
+                suggestions.removeDictionaries(arenaDicts);
+            }
+            arenaDicts.clear();
+            customDicts.clear();
+        }
+        index.clearDictionaries();
+    }
+
+    /**
+     * Compacts the custom dictionary files, pruning the words the system
+     * dictionary has. See {@link DictionaryOptimizer}.
+     * @return What was saved for each dictionary file.
+     * @throws java.io.IOException
+     */
+    public List<DictionaryOptimizer.Report> optimizeCustomDictionaries() throws IOException {
+        ArrayList<DictionaryOptimizer.Report> reports = new ArrayList<DictionaryOptimizer.Report>();
+        for (Dictionary d : copyCustomDictionaries()) {
+            if (d.dictionaryFile != null) {
+                DictionaryOptimizer.Report r = DictionaryOptimizer.optimize(d, sysDictionary);
+                logger.info(r.toString());
+                reports.add(r);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Returns the Bloom filters in front of the custom dictionaries, to see
+     * their false positive rates and size them with
+     * {@link BloomFilter#BITS_PROPERTY}.
+     * @return Filters by the path of their dictionary file.
+     */
+    public synchronized LinkedHashMap<String, BloomFilter> getCustomDictionaryFilters() {
+        LinkedHashMap<String, BloomFilter> filters = new LinkedHashMap<String, BloomFilter>();
+        for (Dictionary d : customDicts) {
+            filters.put(String.valueOf(d.dictionaryFile), d.getFilter());
+        }
+        for (ArenaDictionary d : arenaDicts) {
+            filters.put(String.valueOf(d.dictionaryFile), d.getFilter());
+        }
+        return filters;
+    }
+
+    /**
+     * Turns the watching of the custom dictionary files on or off. When on, a
+     * dictionary whose file is changed by another program is reloaded in the
+     * background; checks running meanwhile see either its old or its new
+     * words, and the checks started afterwards its new words.
+     * @param watch true to watch the files.
+     * @throws java.io.IOException if the files cannot be watched.
+     */
+    public synchronized void setWatchingDictionaries(boolean watch) throws IOException {
+        if (watch == (watcher != null)) {
+            return;
+        }
+        if (watch) {
+            watcher = new DictionaryWatcher();
+            for (Dictionary d : customDicts) {
+                watcher.watch(d);
+            }
+        } else {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Sets the number of documents whose results are kept for a faster
+     * re-check. The results are kept per paragraph, or per run of lines
+     * for plain text files, and only the paragraphs whose text changed are
+     * checked again, as long as the dictionaries and settings are the same.
+     * The errors found are the same as those of a full check. When documents
+     * are kept the errors of a check are delivered at its end, and the
+     * paragraphs of a {@link BatchSpellingErrorListener} are these paragraphs
+     * or runs of lines; the document offsets of the errors do not change.
+     * @param count Number of documents, 0 to keep none.
+     */
+    public synchronized void setRecentDocumentCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count: " + count);
+        }
+        recentDocuments = count == 0 ? null : new DocumentCache(count);
+    }
+
+    /**
+     * Sets the store keeping the errors of the checked files across runs. A
+     * file whose content was already checked with the same dictionaries and
+     * settings then gets the stored errors without being read any further.
+     * @param store The store, null for none.
+     */
+    public synchronized void setResultStore(ResultStore store) {
+        resultStore = store;
+    }
+
+    /**
+     * Makes the stamp of the dictionaries and settings under which results
+     * are stored. Unlike the version of the index it stays the same across
+     * runs: custom dictionaries are identified by the digest of the content
+     * of their file and log, wherever they are, and the user filters by
+     * their version.
+     * @return The stamp, or null if results cannot be stored because a user
+     * filter has no version or a dictionary could not be read.
+     */
+    private synchronized String getResultStamp(HashSet<Integer> delimiters,
+            boolean ignoreUpperCase, boolean findCompoundWords, boolean lines) {
+        StringBuilder sb = new StringBuilder(systemStamp);
+        sb.append('|').append(sysDictionary.getSize());
+        try {
+            for (Dictionary d : customDicts) {
+                sb.append('|').append(d.getType()).append(',').append(d.getSize())
+                        .append(',').append(getDigest(d.dictionaryFile));
+                File log = d.getLogFile();
+                if (log != null && log.exists()) {
+                    sb.append(',').append(getDigest(log));
+                }
+            }
+            for (ArenaDictionary d : arenaDicts) {
+                sb.append('|').append(d.getSize()).append(',').append(getDigest(d.dictionaryFile));
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read a dictionary, results are not stored", ex);
+            return null;
+        }
+        sb.append('|').append(ignoreUpperCase).append(',').append(findCompoundWords)
+                .append(',').append(lines);
+        for (TokenFilter f : userFilters) {
+            if (!(f instanceof VersionedTokenFilter)) {
+                logger.info("Filter " + f.getClass().getName()
+                        + " has no version, results are not stored");
+                return null;
+            }
+            sb.append(',').append(f.getClass().getName()).append(':')
+                    .append(((VersionedTokenFilter) f).getVersion());
+        }
+        sb.append('|').append(new TreeSet<Integer>(delimiters));
+        return sb.toString();
+    }
+
+    /**
+     * Digest of the content of a dictionary file or log. Digests are kept
+     * while the length and time stamp of the file stay the same, so that a
+     * file is only read again once it changed.
+     */
+    private String getDigest(File f) throws IOException {
+        String key = f.getAbsolutePath() + ',' + f.length() + ',' + f.lastModified();
+        String digest = digests.get(key);
+        if (digest == null) {
+            digest = ResultStore.digest(f);
+            if (digests.size() >= MAX_DIGESTS) {
+                digests.clear();
+            }
+            digests.put(key, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Sets the number of threads checking the spellings. Checks already
+     * running keep their limit on queued work.
+     * @param parallelism Number of threads.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+        }
+        // The core size may never exceed the maximum size
+        if (parallelism > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(parallelism);
+            executor.setCorePoolSize(parallelism);
+        } else {
+            executor.setCorePoolSize(parallelism);
+            executor.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * Number of threads checking the spellings.
+     * @return The pool size.
+     */
+    public int getParallelism() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Stops the threads of this spell checker, after waiting for the submitted
+     * documents to be checked. Checks already running are completed, but no
+     * new ones can be started. The custom dictionaries are closed as well.
+     */
+    public void close() {
+        ExecutorService documents;
+        synchronized (this) {
+            documents = documentExecutor;
+        }
+        if (documents != null) {
+            // The submitted documents still need the pool
+            documents.shutdown();
+            try {
+                while (!documents.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.info("Waiting for the submitted documents to be checked.");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        executor.shutdown();
+        loader.shutdown();
+        try {
+            setWatchingDictionaries(false);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not stop watching the dictionaries", ex);
+        }
+        closeCustomDictionaries();
+    }
+
+    /**
+     * Copies the list of custom dictionaries, which is only used while holding
+     * the lock of this checker, to go through it without the lock.
+     */
+    private synchronized ArrayList<Dictionary> copyCustomDictionaries() {
+        return new ArrayList<Dictionary>(customDicts);
+    }
+
+    /**
+     * Closes the custom dictionaries, writing their queued log records.
+     */
+    private void closeCustomDictionaries() {
+        for (Dictionary d : copyCustomDictionaries()) {
+            try {
+                d.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not close dictionary " + d.dictionaryFile, ex);
+            }
+        }
+    }
+
+    /**
+     * Sets the target size of the chunks of text given to each
+     * {@link SpellCheckerTask}. See {@link WorkPartitioner}.
+     * @param chars Target size in chars.
+     */
+    public void setWorkUnitSize(int chars) {
+        if (chars < 1) {
+            throw new IllegalArgumentException("chars: " + chars);
+        }
+        this.workUnitSize = chars;
+    }
+
+    /**
+     * Adds a filter for words that are not to be checked, in addition to the
+     * built-in ones of {@link TokenFilterChain}. Results are only kept in the
+     * {@link ResultStore} if every added filter is a
+     * {@link VersionedTokenFilter}.
+     * @param filter Filter to add.
+     * @param cost Estimated cost of the filter, see
+     * {@link TokenFilterChain#COST_LOW} etc.
+     */
+    public synchronized void addTokenFilter(TokenFilter filter, int cost) {
+        userFilters.add(filter);
+        userFilterCosts.add(cost);
+        // The shared verdicts were made without this filter
+        sharedVerdicts = null;
+    }
+
+    /**
+     * Creates the filter chain for a spelling check from the user
+     * preferences and the added filters.
+     * @param ignoreUpperCase If words in upper case are filtered.
+     * @return The filter chain.
+     */
+    private synchronized TokenFilter createTokenFilter(boolean ignoreUpperCase) {
+        TokenFilterChain chain = TokenFilterChain.createDefault(ignoreUpperCase);
+        for (int i = 0; i < userFilters.size(); i++) {
+            chain.addFilter(userFilters.get(i), userFilterCosts.get(i));
+        }
+        return chain;
+    }
+
+    /**
+     * Sets whether the verdicts on the tokens are cached for the lifetime of
+     * this spell checker rather than for a single check. A shared cache helps
+     * when many small documents are checked; it is replaced when a token
+     * filter is added or the upper case preference changes, and its entries
+     * expire whenever the dictionaries change.
+     * @param shared true to share the verdicts between the checks.
+     * @see VerdictCache
+     */
+    public synchronized void setVerdictCacheShared(boolean shared) {
+        verdictCacheShared = shared;
+        if (!shared) {
+            sharedVerdicts = null;
+        }
+    }
+
+    /**
+     * Returns the verdict cache for a check, a new one unless the verdicts
+     * are shared.
+     */
+    private synchronized VerdictCache getVerdictCache(boolean ignoreUpperCase) {
+        if (!verdictCacheShared) {
+            return new VerdictCache(index);
+        }
+        if (sharedVerdicts == null || sharedVerdictsIgnoreUpperCase != ignoreUpperCase) {
+            sharedVerdicts = new VerdictCache(index, VerdictCache.DEFAULT_CAPACITY * 4);
+            sharedVerdictsIgnoreUpperCase = ignoreUpperCase;
+        }
+        return sharedVerdicts;
+    }
+
+    /**
+     * Index over the system and all the custom dictionaries.
+     * @return The word index.
+     */
+    public WordIndex getWordIndex() {
+        return index;
+    }
+
+    /**
+     * Suggestion index over the system and all the custom dictionaries. It is
+     * built on the first call, which takes a while for the system dictionary,
+     * and is kept current as dictionaries and words are added.
+     * @return The suggestion index.
+     */
+    public synchronized SuggestionIndex getSuggestionIndex() {
+        if (suggestions == null) {
+            long start = System.currentTimeMillis();
+            SuggestionIndex s = new SuggestionIndex();
+            s.addDictionary(sysDictionary);
+            s.addDictionaries(customDicts);
+            s.addDictionaries(arenaDicts);
+            try {
+                s.setWordLevels(loader.loadWordLevels("dictionaries", SUGGESTION_LEVELS));
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not load the word levels, "
+                        + "suggestions are ranked without them", ex);
+            }
+            logger.info("Built suggestion index in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+            suggestions = s;
+        }
+        return suggestions;
+    }
+
+    /**
+     * Finds the correction candidates of a misspelt word in the system and
+     * custom dictionaries, within an edit distance of
+     * {@link SuggestionIndex#DEFAULT_MAX_DISTANCE}. A capitalized or upper
+     * case word gets its suggestions in the same case.
+     * @param word Misspelt word.
+     * @param max Maximum number of suggestions.
+     * @return Suggestions, best first.
+     * @see SuggestionIndex#suggest(String, int)
+     */
+    public List<String> suggest(String word, int max) {
+        List<String> s = getSuggestionIndex().suggest(word, max);
+        if (word.length() > 0 && Character.isUpperCase(word.charAt(0))) {
+            boolean upper = word.length() > 1 && word.equals(word.toUpperCase());
+            ArrayList<String> cased = new ArrayList<String>(s.size());
+            for (String x : s) {
+                cased.add(upper ? x.toUpperCase()
+                        : Character.toUpperCase(x.charAt(0)) + x.substring(1));
+            }
+            s = cased;
+        }
+        return s;
     }
 
     public HashSet<Integer> getDelimiters() throws NumberFormatException {
@@ -157,4 +905,34 @@ public class SpellChecker {
         logger.info("Loaded "+delimiters.size()+" word delimiters.");
         return delimiters;
     }
+
+    /**
+     * Runs a task of a check, recording its failure and giving its permit
+     * back when done.
+     */
+    private static class UnitTask implements Runnable {
+
+        private final SpellCheckerTask task;
+        private final Semaphore permits;
+        private final AtomicReference<Throwable> failure;
+
+        UnitTask(SpellCheckerTask task, Semaphore permits, AtomicReference<Throwable> failure) {
+            this.task = task;
+            this.permits = permits;
+            this.failure = failure;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                failure.compareAndSet(null, ex);
+            } catch (Error ex) {
+                failure.compareAndSet(null, ex);
+                throw ex;
+            } finally {
+                permits.release();
+            }
+        }
+    }
 }
\ No newline at end of file
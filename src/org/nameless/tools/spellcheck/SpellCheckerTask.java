@@ -10,12 +10,8 @@ package org.nameless.tools.spellcheck;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
-import java.util.StringTokenizer;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import org.nameless.tools.spellcheck.ui.PrefsHelper;
 
 /**
@@ -31,23 +27,46 @@ public class SpellCheckerTask implements Runnable {
      */
     private Logger logger = Logger.getLogger(getClass().getName());
     /**
-     * Text to check spelling for.
+     * Paragraphs to check spelling for.
      */
-    private String text;
+    private WorkPartitioner.Segment[] paras;
     /**
      * Listener for spelling check errors.
      */
     private final SpellingErrorListener listener;
     /**
-     * This one holds the dictionaries that we check against.
+     * Index of the dictionaries that we check against.
      */
-    private ArrayList<Dictionary> dictionaries;
-    private HashSet<Integer> delimiters;
+    private WordIndex index;
     /**
-     * List of common suffixes added to words as shorthands. For example, s
-     * (He's), re (They're), ll (She'll) etc.
+     * Splits the text into words.
      */
-    private List<String> COMMON_SUFFIX = Arrays.asList("s", "re", "ll", "d", "t", "ve");
+    private WordTokenizer tokenizer;
+    /**
+     * Words accepted by this filter are not checked.
+     */
+    private TokenFilter filter;
+    /**
+     * Orders the positional errors of a {@link BatchSpellingErrorListener},
+     * null if the listener takes plain words.
+     */
+    private ErrorSequencer sequencer;
+    /**
+     * Sequence number of this task among the tasks of the same check.
+     */
+    private int sequence;
+    /**
+     * Positional errors found, when delivered through the sequencer.
+     */
+    private ArrayList<SpellingError> errors;
+    /**
+     * Verdicts on the tokens shared with the other tasks, may be null.
+     */
+    private VerdictCache verdicts;
+    /**
+     * View of a part of a hyphenated word, reused for every part.
+     */
+    private final Span part = new Span();
 
     /**
      * Creates the instance of this task by supplying it with the chunk of text
@@ -55,16 +74,91 @@ public class SpellCheckerTask implements Runnable {
      *
      * @param text Text to spell-check
      * @param listener Spelling error listener instance.
-     * @param dictionaries
+     * @param index Index of the dictionaries to check against.
      * @param delims
      * @throws java.io.IOException
      */
     public SpellCheckerTask(String text, SpellingErrorListener listener,
-            ArrayList<Dictionary> dictionaries, HashSet<Integer> delims) throws IOException {
-        this.text = text;
+            WordIndex index, HashSet<Integer> delims) throws IOException {
+        this(text, listener, index, new WordTokenizer(delims),
+                TokenFilterChain.createDefault(PrefsHelper.isUpperCaseWordsIgnored()));
+    }
+
+    /**
+     * Creates the instance of this task by supplying it with the chunk of text
+     * to spell check, and the spelling error listener.
+     *
+     * @param text Text to spell-check
+     * @param listener Spelling error listener instance.
+     * @param index Index of the dictionaries to check against.
+     * @param tokenizer Tokenizer splitting the text into words.
+     * @param filter Filter for the words that are not to be checked.
+     */
+    public SpellCheckerTask(String text, SpellingErrorListener listener,
+            WordIndex index, WordTokenizer tokenizer, TokenFilter filter) {
+        this(new WorkPartitioner.Segment[]{new WorkPartitioner.Segment(text, 0, 0, 0)},
+                listener, index, tokenizer, filter);
+    }
+
+    /**
+     * Creates the instance of this task by supplying it with several
+     * paragraphs to spell check, e.g. a unit made by a
+     * {@link WorkPartitioner}. Each paragraph is checked separately.
+     *
+     * @param paras Paragraphs to spell-check
+     * @param listener Spelling error listener instance.
+     * @param index Index of the dictionaries to check against.
+     * @param tokenizer Tokenizer splitting the text into words.
+     * @param filter Filter for the words that are not to be checked.
+     */
+    public SpellCheckerTask(WorkPartitioner.Segment[] paras, SpellingErrorListener listener,
+            WordIndex index, WordTokenizer tokenizer, TokenFilter filter) {
+        this.paras = paras;
         this.listener = listener;
-        this.dictionaries = dictionaries;
-        this.delimiters = delims;
+        this.index = index;
+        this.tokenizer = tokenizer;
+        this.filter = filter;
+    }
+
+    /**
+     * Creates the instance of this task for one unit of a check delivering
+     * positional errors. The errors found are passed to the sequencer as one
+     * batch.
+     */
+    SpellCheckerTask(WorkPartitioner.Segment[] paras, int sequence, ErrorSequencer sequencer,
+            SpellingErrorListener listener, WordIndex index, WordTokenizer tokenizer,
+            TokenFilter filter) {
+        this(paras, listener, index, tokenizer, filter);
+        this.sequence = sequence;
+        this.sequencer = sequencer;
+    }
+
+    /**
+     * Sets the cache of the verdicts on the tokens, which may be shared by the
+     * tasks of checks using the same index and filter as this task.
+     * @param verdicts Verdict cache over the index of this task, null for
+     * none.
+     */
+    public void setVerdictCache(VerdictCache verdicts) {
+        this.verdicts = verdicts;
+    }
+
+    /**
+     * Checks if the given token is a known word, through the verdict cache if
+     * there is one. The token is only copied to be cached.
+     */
+    private boolean isKnown(CharSequence word) {
+        if (verdicts == null) {
+            return checkSpelling(word);
+        }
+        Boolean v = verdicts.get(word);
+        if (v != null) {
+            return v.booleanValue();
+        }
+        int version = verdicts.getVersion();
+        boolean known = checkSpelling(word);
+        verdicts.put(word.toString(), known, version);
+        return known;
     }
 
     /**
@@ -73,21 +167,35 @@ public class SpellCheckerTask implements Runnable {
      *
      * @param word Word to search.
      */
-    private boolean checkSpelling(String word) {
+    private boolean checkSpelling(CharSequence word) {
 
         boolean exists = false;
-        if (word == null || word.trim().length() == 0) {
+        if (word == null || isBlank(word)) {
             exists = true;
-        } else if (isFiltered(word)) {
+        } else if (filter.isFiltered(word)) {
             exists = true;
         } else {
 
-            if (word.contains("-")) {
+            if (indexOf(word, '-', 0) >= 0) {
                 if (!isInWordList(word)) {
+                    // Each part, trimmed, must be a word
                     boolean pe = true;
-                    for (String part : word.split("-"))
-                    {
-                        pe = pe && checkSpelling(part.trim());
+                    int n = word.length();
+                    for (int s = 0; s <= n && pe;) {
+                        int e = indexOf(word, '-', s);
+                        if (e < 0) {
+                            e = n;
+                        }
+                        int ps = s;
+                        int pend = e;
+                        while (ps < pend && word.charAt(ps) <= ' ') {
+                            ps++;
+                        }
+                        while (ps < pend && word.charAt(pend - 1) <= ' ') {
+                            pend--;
+                        }
+                        pe = checkSpelling(part.set(word, ps, pend));
+                        s = e + 1;
                     }
                     exists = pe;
                 } else {
@@ -100,67 +208,22 @@ public class SpellCheckerTask implements Runnable {
         return exists;
     }
 
-    /**
-     * Checks if the given word is filtered. A word is filtered if it: 1) Is an
-     * abbreviation (i.e. contains single alphabet characters separated by
-     * dots). 2) Is in upper case and user setting says to ignore upper case
-     * words 3) Is a number or a suffixed number e.g. 23rd, 45th, 1970s etc.
-     *
-     * @param word Word to check
-     * @return true if the word is determined to be filtered, else false.
-     */
-    private boolean isFiltered(String word) {
-        boolean filtered = false;
-        try {
-            Float.parseFloat(word);
-            filtered = true;
-        } catch (NumberFormatException nfe) {
-        }
-        if (isAbbreviation(word) || PrefsHelper.isUpperCaseWordsIgnored()
-                && isUpperCase(word)) {
-            filtered = true;
-        }
-        // Takes care of the suffixed numbers e.g. 23rd, 45th, 1970s etc.
-        filtered = Pattern.matches("[0-9]+(st|nd|rd|th|s)?", word.toLowerCase());
-        return filtered;
-    }
-
-    /**
-     * If the given word is in upper case.
-     *
-     * @param word Word to check
-     * @return true if the word is in upper case, else false.
-     */
-    private boolean isUpperCase(String word) {
-        boolean ucase = true;
-        char[] chars = word.toCharArray();
-        for (char ch : chars) {
-            if (Character.isLowerCase(ch)) {
-                ucase = false;
-                break;
+    private static boolean isBlank(CharSequence word) {
+        for (int i = 0, n = word.length(); i < n; i++) {
+            if (word.charAt(i) > ' ') {
+                return false;
             }
         }
-        return ucase;
+        return true;
     }
 
-    /**
-     * If the given text is possibly an abbreviation. (i.e. contains single
-     * alphabet characters seperated by dots).
-     *
-     * @param word Text to check.
-     * @return
-     */
-    private boolean isAbbreviation(String word) {
-
-        boolean abbr = true;
-        String[] parts = word.split("\\.");
-        for (String part : parts) {
-            if (part.length() > 1 || !Pattern.matches("[a-zA-Z]", part)) {
-                abbr = false;
-                break;
+    private static int indexOf(CharSequence word, char c, int from) {
+        for (int i = from, n = word.length(); i < n; i++) {
+            if (word.charAt(i) == c) {
+                return i;
             }
         }
-        return abbr;
+        return -1;
     }
 
     /**
@@ -172,95 +235,114 @@ public class SpellCheckerTask implements Runnable {
      */
     public void run() {
 
-        /**
-         * Replace all delimiters with single space so that words can be
-         * tokenized with space as delimiter.
-         */
-        for (int x : delimiters) {
-            text = text.replace((char) x, ' ');
-        }
-
-        StringTokenizer tokenizer = new StringTokenizer(text, " ");
         boolean findCompoundWords = PrefsHelper.isFindCompoundWordsEnabled();
         ArrayList<String> ufl = new ArrayList<String>();
-        for (; tokenizer.hasMoreTokens();) {
-            String word = tokenizer.nextToken().trim();
-            boolean endsWithPunc = word.matches(".*[,.!?;]");
-            
-            // Remove punctuation marks from both ends
-            String prevWord = null;
-            while (!word.equals(prevWord)) {
-                prevWord = word;
-                word = removePunctuation(word);
+        if (sequencer != null) {
+            errors = new ArrayList<SpellingError>();
+        }
+        try {
+            for (WorkPartitioner.Segment para : paras) {
+                check(para, findCompoundWords, ufl);
+            }
+        } finally {
+            if (sequencer != null) {
+                // Delivered even after a failure, so the later units are not
+                // held back forever
+                sequencer.deliver(sequence, errors);
             }
-            
+        }
+    }
+
+    /**
+     * Checks the words of a single paragraph.
+     */
+    private void check(WorkPartitioner.Segment para, boolean findCompoundWords,
+            ArrayList<String> ufl) {
+        WordTokenizer.Token token = tokenizer.tokenize(para.getText());
+        int offset = para.getOffset();
+        // Span of the pending compound word
+        int start = 0;
+        int end = 0;
+        while (token.next()) {
+            // The token is already trimmed and stripped of punctuation marks,
+            // and is looked up in place; only unknown words are copied
+            boolean endsWithPunc = token.endsWithPunctuation();
+
             // Check spelling in word lists
-            boolean found = checkSpelling(word);
+            boolean found = isKnown(token);
             if (findCompoundWords) {
                 if (!found) {
-                    ufl.add(word);
-                    if (endsWithPunc) pushErrorToListener(ufl);
+                    if (ufl.isEmpty()) {
+                        start = offset + token.getStart();
+                    }
+                    end = offset + token.getEnd();
+                    ufl.add(token.toString());
+                    if (endsWithPunc) pushErrorToListener(ufl, para, start, end);
                 } else {
-                    pushErrorToListener(ufl);
+                    pushErrorToListener(ufl, para, start, end);
                 }
             } else {
-                if (!found) listener.addWord(word);
+                if (!found) addError(token.toString(), para, offset + token.getStart(),
+                        offset + token.getEnd());
             }
         }
-        pushErrorToListener(ufl);
+        pushErrorToListener(ufl, para, start, end);
     }
 
-    /**
-     * Removes any punctuation ('.', ',', '?', '!' etc.) from around the given
-     * word.
-     *
-     * @param word
-     * @return
-     */
-    private String removePunctuation(String word) {
-
-        StringBuffer sb = new StringBuffer(word);
-        if (word.length() == 0) {
-            return word;
-        }
-        for (String cs : COMMON_SUFFIX) {
-            if (word.endsWith("'" + cs) || word.endsWith("’" + cs)) {
-                sb.delete(sb.length() - cs.length() - 1, sb.length());
-                break;
-            }
-        }
-        if (sb.length() > 0) {
-            int first = Character.getType(sb.charAt(0));
-            int last = Character.getType(sb.charAt(sb.length() - 1));
-            if (last != Character.LOWERCASE_LETTER
-                    && last != Character.UPPERCASE_LETTER) {
-                sb.deleteCharAt(sb.length() - 1);
-            }
-            if (sb.length() > 0 && first != Character.LOWERCASE_LETTER
-                    && first != Character.UPPERCASE_LETTER) {
-                sb.deleteCharAt(0);
-            }
+    private void addError(String word, WorkPartitioner.Segment para, int start, int end) {
+        if (errors != null) {
+            errors.add(new SpellingError(word, para.getParagraph(),
+                    para.getParagraphOffset(), start, end));
+        } else {
+            listener.addWord(word);
         }
-        return sb.toString();
     }
 
-    private boolean isInWordList(String word) {
-        boolean exists = false;
-        for (Dictionary dict : dictionaries) {
-            if (dict.containsWord(word)) {
-                exists = true;
-                break;
-            }
-        }
-        return exists;
+    private boolean isInWordList(CharSequence word) {
+        return index.contains(word, 0, word.length());
     }
 
-    private void pushErrorToListener(ArrayList<String> ufl) {
+    private void pushErrorToListener(ArrayList<String> ufl, WorkPartitioner.Segment para,
+            int start, int end) {
         if (!ufl.isEmpty()) {
             StringBuilder sb = new StringBuilder();
             for(String x : ufl) sb.append(x).append(" ");
-            listener.addWord(sb.toString());
+            addError(sb.toString(), para, start, end);
             ufl.clear();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Mutable view of a part of a char sequence.
+     */
+    private static class Span implements CharSequence {
+
+        private CharSequence text;
+        private int start;
+        private int end;
+
+        Span set(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return text.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+/**
+ * A spelling error found at a position of the checked document, given both
+ * within its paragraph and from the start of the document. Errors are
+ * ordered by their position.
+ * @author bsodhi
+ */
+public class SpellingError implements Comparable<SpellingError> {
+
+    private final String word;
+    private final int paragraph;
+    private final long paragraphOffset;
+    private final int start;
+    private final int end;
+
+    /**
+     * Creates an error.
+     * @param word The misspelt word, or words in case of a compound word.
+     * @param paragraph Sequence number of the paragraph, from 0.
+     * @param paragraphOffset Offset of the paragraph in the document.
+     * @param start Offset of the error in its paragraph.
+     * @param end Offset just after the error in its paragraph.
+     */
+    public SpellingError(String word, int paragraph, long paragraphOffset, int start, int end) {
+        this.word = word;
+        this.paragraph = paragraph;
+        this.paragraphOffset = paragraphOffset;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * The misspelt word, as it would be given to
+     * {@link SpellingErrorListener#addWord(String)}.
+     * @return The word.
+     */
+    public String getWord() {
+        return word;
+    }
+
+    /**
+     * Sequence number of the paragraph of the error, counted from 0 in the
+     * order the paragraphs were read from the document.
+     * @return Paragraph number.
+     */
+    public int getParagraph() {
+        return paragraph;
+    }
+
+    /**
+     * Offset of the paragraph of the error in the document, counted in chars
+     * of the text read from it.
+     * @return Paragraph offset.
+     */
+    public long getParagraphOffset() {
+        return paragraphOffset;
+    }
+
+    /**
+     * Offset of the error in the document.
+     * @return Start offset.
+     */
+    public long getDocumentStart() {
+        return paragraphOffset + start;
+    }
+
+    /**
+     * Offset just after the error in the document.
+     * @return End offset.
+     */
+    public long getDocumentEnd() {
+        return paragraphOffset + end;
+    }
+
+    /**
+     * Offset of the error in its paragraph.
+     * @return Start offset.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Offset just after the error in its paragraph.
+     * @return End offset.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public int compareTo(SpellingError o) {
+        if (paragraph != o.paragraph) {
+            return paragraph < o.paragraph ? -1 : 1;
+        }
+        if (start != o.start) {
+            return start < o.start ? -1 : 1;
+        }
+        return end < o.end ? -1 : (end == o.end ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SpellingError)) {
+            return false;
+        }
+        SpellingError o = (SpellingError) obj;
+        return paragraph == o.paragraph && paragraphOffset == o.paragraphOffset
+                && start == o.start && end == o.end && word.equals(o.word);
+    }
+
+    @Override
+    public int hashCode() {
+        return (paragraph * 31 + start) * 31 + end;
+    }
+
+    @Override
+    public String toString() {
+        return word + " [" + paragraph + ":" + start + "-" + end + " @"
+                + getDocumentStart() + "]";
+    }
+}
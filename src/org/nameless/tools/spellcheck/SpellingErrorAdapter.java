@@ -4,7 +4,7 @@
 
 package org.nameless.tools.spellcheck;
 
-import java.util.TreeSet;
+import java.util.SortedMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
@@ -13,7 +13,8 @@ import javax.swing.text.Document;
 /**
  * Holds the spelling errors. It also acts as a sort of listener for the errors
  * and keeps on addding them to the {@link Document} instance it is created
- * with.
+ * with. It is safe to add the errors from several threads at once; they are
+ * sorted only when written to the document.
  * @author bsodhi
  */
 public class SpellingErrorAdapter implements SpellingErrorListener {
@@ -23,9 +24,9 @@ public class SpellingErrorAdapter implements SpellingErrorListener {
      */
     private Document document;
     /**
-     * Spelling errors.
+     * Spelling errors and their occurrences.
      */
-    private TreeSet<String> errors = new TreeSet<String>();
+    private final ErrorCollector errors = new ErrorCollector();
     
     /**
      * Initializes this instance with the document to which to add the
@@ -45,20 +46,12 @@ public class SpellingErrorAdapter implements SpellingErrorListener {
      * @param text Word to be added.
      */
     public void addWord(String text) {
-        if (errors.add(text)) {
-            /*
-            try {
-                document.insertString(document.getLength(), errors.last() +"\n", null);
-            } catch (BadLocationException ex) {
-                Logger.getLogger(SpellingErrorAdapter.class.getName()).log(Level.SEVERE, null, ex);
-            }*/
-        }
-        
+        errors.add(text);
     }
 
     public void writeErrorsToDocument() {
         StringBuilder sb = new StringBuilder();
-        for (String error : errors) {
+        for (String error : errors.getErrors().keySet()) {
             sb.append(error).append("\n");
         }
         try {
@@ -80,4 +73,22 @@ public class SpellingErrorAdapter implements SpellingErrorListener {
         return errors.size();
     }
 
+    /**
+     * Returns the number of times the given error occurred in the checked
+     * document.
+     * @param text The misspelt word.
+     * @return Occurrences, 0 if it is not an error.
+     */
+    public int getOccurrences(String text) {
+        return errors.getOccurrences(text);
+    }
+
+    /**
+     * Returns the errors in sorted order with their occurrences.
+     * @return Read-only map of the errors to their occurrences.
+     */
+    public SortedMap<String, Integer> getErrors() {
+        return errors.getErrors();
+    }
+
 }
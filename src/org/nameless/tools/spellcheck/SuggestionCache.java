@@ -0,0 +1,232 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of the suggestions of {@link SuggestionIndex}, keyed by
+ * the lower case misspelling, evicting the least recently used entries.
+ * <p>
+ * Like {@link ErrorCollector} the entries are spread over stripes, each an
+ * access ordered map with its own lock and an equal share of the capacity;
+ * the stripe of a word is chosen by its hash. Every change to the vocabulary
+ * clears the cache and moves it to a new generation. A suggestion computed
+ * before the change is not stored afterwards, so a cached suggestion never
+ * misses a word that was in the dictionaries when it was looked up.
+ * @author bsodhi
+ */
+public class SuggestionCache {
+
+    /**
+     * Default number of cached misspellings.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Stripe[] stripes;
+    private volatile long generation;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Creates a cache of the default capacity.
+     */
+    public SuggestionCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache holding up to about the given number of misspellings.
+     * @param capacity Maximum number of entries, 0 to cache nothing.
+     */
+    public SuggestionCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int n = 2;
+        while (n < Runtime.getRuntime().availableProcessors() * 4 && n * 16 < capacity) {
+            n <<= 1;
+        }
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe((capacity + n - 1) / n);
+        }
+    }
+
+    /**
+     * Returns the cached suggestions of a word.
+     * @param word Lower case word.
+     * @param max Maximum number of suggestions wanted.
+     * @return The suggestions, or null if they are not cached for at least
+     * that many.
+     */
+    public List<String> get(String word, int max) {
+        Stripe s = stripeOf(word);
+        Cached e;
+        synchronized (s) {
+            e = s.get(word);
+        }
+        if (e == null || (e.max < max && e.suggestions.size() == e.max)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.suggestions.size() > max ? e.suggestions.subList(0, max) : e.suggestions;
+    }
+
+    /**
+     * Current generation, to be read before computing suggestions that are
+     * then passed to {@link #put(String, int, List, long)}.
+     * @return The generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the suggestions of a word, unless the vocabulary changed since
+     * the given generation.
+     * @param word Lower case word.
+     * @param max Maximum number of suggestions they were computed for.
+     * @param suggestions The suggestions, not to be modified any more.
+     * @param generation Generation read before computing them.
+     */
+    public void put(String word, int max, List<String> suggestions, long generation) {
+        Stripe s = stripeOf(word);
+        synchronized (s) {
+            // Checked under the lock as invalidate() clears each stripe under it
+            if (generation == this.generation) {
+                s.put(word, new Cached(max, suggestions));
+            }
+        }
+    }
+
+    /**
+     * Drops all the entries after a change to the vocabulary.
+     */
+    public void invalidate() {
+        synchronized (stripes) {
+            generation++;
+        }
+        invalidations.incrementAndGet();
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     * @return Hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups not answered from the cache.
+     * @return Miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Share of the lookups answered from the cache.
+     * @return Hit rate between 0 and 1, 0 if there was no lookup.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Number of entries evicted to stay within the capacity.
+     * @return Eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Number of times the cache was cleared by a change to the vocabulary.
+     * @return Invalidation count.
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * Number of cached misspellings.
+     * @return Entry count.
+     */
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size();
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "SuggestionCache[size=" + size() + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", invalidations=" + invalidations + "]";
+    }
+
+    private Stripe stripeOf(String word) {
+        int h = word.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * Suggestions of a word.
+     */
+    private static class Cached {
+
+        /**
+         * Maximum number of suggestions they were computed for.
+         */
+        final int max;
+        final List<String> suggestions;
+
+        Cached(int max, List<String> suggestions) {
+            this.max = max;
+            this.suggestions = suggestions;
+        }
+    }
+
+    /**
+     * Entries of the words mapped to one stripe, least recently used first.
+     */
+    private class Stripe extends LinkedHashMap<String, Cached> {
+
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
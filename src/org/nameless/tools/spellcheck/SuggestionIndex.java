@@ -0,0 +1,605 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the correction candidates of a misspelt word with the symmetric
+ * delete algorithm. For every dictionary word the strings obtained by
+ * deleting up to {@link #getMaxDistance()} chars are precomputed; a word
+ * within that edit distance of a misspelling shares at least one of them with
+ * the deletes of the misspelling, so a lookup only has to probe the deletes
+ * of the misspelling and verify the few words they lead to.
+ * <p>
+ * As in SymSpell only the deletes of the first {@link #PREFIX_LENGTH} chars
+ * of a word are indexed, which bounds the index size to a fixed number of
+ * entries per word. The deletes are kept as their 32 bit hashes only; a hash
+ * collision merely yields one more candidate that fails verification.
+ * <p>
+ * The index has one layer per dictionary, with sorted arrays of
+ * <code>(deleteHash &lt;&lt; 32) | wordId</code> entries and a
+ * {@link PhoneticIndex} of the words. Words added to a
+ * dictionary later are kept in a small copy-on-write list of its layer that
+ * is scanned directly, and the layer is rebuilt once they pass
+ * {@link #REBUILD_SHARE_PERCENT} of its words. Readers never lock.
+ * <p>
+ * The entries of a layer are kept in buckets by word length, so that a
+ * lookup only searches the words within reach of the length of the
+ * misspelling. They are all built with the layer, so the first lookups are
+ * as fast as the later ones; this takes up to 8 bytes per delete and word,
+ * some 230 bytes per word at distance 2.
+ * <p>
+ * Sound-alike words found through the phonetic index are suggested up to
+ * {@link #PHONETIC_SLACK} more edits away. Only a word with the same
+ * {@link Metaphone#spell(String) sound spelling} as the misspelling ranks as
+ * if it were that much closer; words merely sharing its {@link Metaphone}
+ * key do not, as many short words share a key. Words equally close are
+ * ranked by their frequency level, see {@link #setWordLevels(Map)}, and then
+ * by the distance of the sound spellings, so "fone" gets "phone", spelled
+ * the same, before "fine", which differs by a vowel.
+ * <p>
+ * The suggestions are cached in a {@link SuggestionCache}, which the index
+ * clears whenever a dictionary or a word is added or a dictionary removed.
+ * @author bsodhi
+ */
+public class SuggestionIndex implements DictionaryListener {
+
+    /**
+     * Default maximum edit distance of the suggestions.
+     */
+    public static final int DEFAULT_MAX_DISTANCE = 2;
+    /**
+     * Number of leading chars of a word whose deletes are indexed.
+     */
+    public static final int PREFIX_LENGTH = 7;
+    /**
+     * Number of edits a sound-alike word may be further away than the other
+     * suggestions.
+     */
+    public static final int PHONETIC_SLACK = 1;
+    /**
+     * Share of the words of a layer that may be added to or removed from its
+     * dictionary before the layer is rebuilt with them.
+     */
+    public static final int REBUILD_SHARE_PERCENT = 10;
+    /**
+     * Frequency level of the words without a known level, ranking after all
+     * the others.
+     */
+    public static final int UNKNOWN_LEVEL = 100;
+
+    private final int maxDistance;
+    /**
+     * Layers of the indexed dictionaries, in the order added.
+     */
+    private volatile List<Layer> layers = Collections.emptyList();
+    /**
+     * Frequency level of the words, never modified once published.
+     */
+    private volatile Map<String, Integer> levels = Collections.emptyMap();
+    private final SuggestionCache cache;
+
+    /**
+     * Creates an empty index for suggestions within the default distance.
+     */
+    public SuggestionIndex() {
+        this(DEFAULT_MAX_DISTANCE, new SuggestionCache());
+    }
+
+    /**
+     * Creates an empty index.
+     * @param maxDistance Maximum edit distance of the suggestions, 1 or 2.
+     * @param cache Cache of the suggestions, cleared by this index whenever
+     * the vocabulary changes.
+     */
+    public SuggestionIndex(int maxDistance, SuggestionCache cache) {
+        if (maxDistance < 1 || maxDistance > 2) {
+            throw new IllegalArgumentException("maxDistance: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.cache = cache;
+    }
+
+    /**
+     * Maximum edit distance of the suggestions.
+     * @return The distance.
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Cache of the suggestions of this index, e.g. for its statistics.
+     * @return The cache.
+     */
+    public SuggestionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the frequency levels of the words, lower for more frequent words,
+     * by which the suggestions equally close to a misspelling are ranked.
+     * Words without a level get {@link #UNKNOWN_LEVEL}.
+     * @param levels Level of each lower case word; not modified afterwards.
+     * @see DictionaryLoader#loadWordLevels(String, int)
+     */
+    public void setWordLevels(Map<String, Integer> levels) {
+        this.levels = levels;
+        cache.invalidate();
+    }
+
+    /**
+     * Indexes the words of a dictionary. The index listens to the dictionary,
+     * so words added to it later are suggested as well.
+     * @param dictionary Dictionary to index.
+     */
+    public void addDictionary(AbstractDictionary dictionary) {
+        addDictionaries(Collections.singletonList(dictionary));
+    }
+
+    /**
+     * Indexes the words of several dictionaries.
+     * @param dictionaries Dictionaries to index.
+     */
+    public synchronized void addDictionaries(Collection<? extends AbstractDictionary> dictionaries) {
+        ArrayList<Layer> l = new ArrayList<Layer>(layers);
+        for (AbstractDictionary d : dictionaries) {
+            l.add(new Layer(d, maxDistance));
+            d.addDictionaryListener(this);
+        }
+        layers = Collections.unmodifiableList(l);
+        cache.invalidate();
+    }
+
+    /**
+     * Removes the given dictionaries from the index.
+     * @param dictionaries Dictionaries to remove.
+     */
+    public synchronized void removeDictionaries(Collection<? extends AbstractDictionary> dictionaries) {
+        ArrayList<Layer> l = new ArrayList<Layer>(layers.size());
+        for (Layer layer : layers) {
+            if (dictionaries.contains(layer.dictionary)) {
+                layer.dictionary.removeDictionaryListener(this);
+            } else {
+                l.add(layer);
+            }
+        }
+        layers = Collections.unmodifiableList(l);
+        cache.invalidate();
+    }
+
+    /**
+     * Adds the words added to one of the indexed dictionaries, and stops
+     * suggesting the words removed from it. The layer of the dictionary is
+     * rebuilt with them once there are too many to scan.
+     */
+    public synchronized void wordsChanged(AbstractDictionary dictionary,
+            Collection<String> added, Collection<String> removed) {
+        for (Layer layer : layers) {
+            if (layer.dictionary == dictionary) {
+                int changes = layer.added.length + layer.removed.size()
+                        + added.size() + removed.size();
+                if (changes > 16 + (long) layer.words.length * REBUILD_SHARE_PERCENT / 100) {
+                    dictionaryReloaded(dictionary);
+                    return;
+                }
+                ArrayList<String> a = new ArrayList<String>(Arrays.asList(layer.added));
+                a.addAll(added);
+                HashSet<String> r = null;
+                for (String word : removed) {
+                    if (!a.remove(word)) {
+                        if (r == null) {
+                            r = new HashSet<String>(layer.removed);
+                        }
+                        r.add(word);
+                    }
+                }
+                if (r != null) {
+                    layer.removed = r;
+                }
+                layer.added = a.toArray(new String[a.size()]);
+            }
+        }
+        cache.invalidate();
+    }
+
+    /**
+     * Rebuilds the layer of a reloaded dictionary and swaps it in. The words
+     * added or removed since the layer was built are folded into the new
+     * one.
+     */
+    public synchronized void dictionaryReloaded(AbstractDictionary dictionary) {
+        ArrayList<Layer> l = new ArrayList<Layer>(layers);
+        for (int i = 0; i < l.size(); i++) {
+            if (l.get(i).dictionary == dictionary) {
+                l.set(i, new Layer(dictionary, maxDistance));
+            }
+        }
+        layers = Collections.unmodifiableList(l);
+        cache.invalidate();
+    }
+
+    /**
+     * Finds the dictionary words closest to the given word. They are ranked
+     * by edit distance, counting the transposition of two adjacent chars as a
+     * single edit and a word spelled by sound as the given word as
+     * {@link #PHONETIC_SLACK} edits closer, then by frequency level, then by
+     * the distance of the sound spellings of sound-alike words, then by the
+     * difference in length and then alphabetically.
+     * The given word itself comes first if it is in a dictionary.
+     * @param word Word to find the suggestions for.
+     * @param max Maximum number of suggestions.
+     * @return Read-only list of lower case suggestions, best first.
+     */
+    public List<String> suggest(String word, int max) {
+        String w = word.toLowerCase();
+        List<String> cached = cache.get(w, max);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.getGeneration();
+        Query q = new Query(w, deletes(w, maxDistance), Metaphone.encode(w), maxDistance, levels);
+        for (Layer layer : layers) {
+            layer.collect(q);
+        }
+        ArrayList<Suggestion> ranked = new ArrayList<Suggestion>(q.found.values());
+        Collections.sort(ranked);
+        ArrayList<String> result = new ArrayList<String>(Math.min(max, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < max; i++) {
+            result.add(ranked.get(i).word);
+        }
+        List<String> r = Collections.unmodifiableList(result);
+        cache.put(w, max, r, generation);
+        return r;
+    }
+
+    /**
+     * Optimal string alignment distance of two words, giving up once it
+     * exceeds the given maximum.
+     * @return The distance, or maxDistance + 1 if it is larger.
+     */
+    static int distance(String a, String b, int maxDistance) {
+        int n = a.length();
+        int m = b.length();
+        int[] prev2 = new int[m + 1];
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int d = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1),
+                        prev[j - 1] + (ca == cb ? 0 : 1));
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    d = Math.min(d, prev2[j - 2] + 1);
+                }
+                cur[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] t = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = t;
+        }
+        return Math.min(prev[m], maxDistance + 1);
+    }
+
+    /**
+     * Hashes of the strings obtained by deleting up to the given number of
+     * chars, 1 or 2, from the indexed prefix of a word, sorted and without
+     * duplicates. The hashes are computed in place rather than over the
+     * strings of the deletes, as building the index computes them for every
+     * word.
+     */
+    static long[] deletes(String word, int maxDistance) {
+        int n = Math.min(word.length(), PREFIX_LENGTH);
+        long[] hashes = new long[1 + n + (maxDistance > 1 ? n * (n - 1) / 2 : 0)];
+        int k = 0;
+        hashes[k++] = hash(word, n, -1, -1);
+        for (int i = 0; i < n; i++) {
+            hashes[k++] = hash(word, n, i, -1);
+            if (maxDistance > 1) {
+                for (int j = i + 1; j < n; j++) {
+                    hashes[k++] = hash(word, n, i, j);
+                }
+            }
+        }
+        return unique(hashes, k);
+    }
+
+    /**
+     * Hash of the first n chars of a word less the chars at the given
+     * indexes, as {@link String#hashCode()} of that string would give.
+     */
+    private static long hash(String word, int n, int skip, int skip2) {
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (i != skip && i != skip2) {
+                h = 31 * h + word.charAt(i);
+            }
+        }
+        return (h ^ (h >>> 16)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Sorts the first n values and removes the duplicates.
+     */
+    private static long[] unique(long[] values, int n) {
+        Arrays.sort(values, 0, n);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k == 0 || values[k - 1] != values[i]) {
+                values[k++] = values[i];
+            }
+        }
+        return k == values.length ? values : Arrays.copyOf(values, k);
+    }
+
+    /**
+     * Sorts the first n entries by their delete hash with two passes of a
+     * radix sort, which for the millions of entries of the system dictionary
+     * is several times faster than a comparison sort. Entries of the same
+     * hash keep their order, which is that of the word ids.
+     * @return Array of the n sorted entries.
+     */
+    private static long[] sortByHash(long[] entries, int n) {
+        long[] from = entries;
+        long[] to = new long[n];
+        int[] counts = new int[1 << 16];
+        for (int shift = 32; shift < 64; shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (from[i] >>> shift) & 0xFFFF]++;
+            }
+            int sum = 0;
+            for (int d = 0; d < counts.length; d++) {
+                int c = counts[d];
+                counts[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                to[counts[(int) (from[i] >>> shift) & 0xFFFF]++] = from[i];
+            }
+            long[] t = from;
+            from = to;
+            to = shift == 32 && t.length != n ? new long[n] : t;
+        }
+        return from;
+    }
+
+    /**
+     * Deletes of the words of one dictionary.
+     */
+    private static class Layer {
+
+        /**
+         * Words longer than this share the last bucket.
+         */
+        private static final int MAX_BUCKET = 32;
+
+        private final AbstractDictionary dictionary;
+        private final String[] words;
+        private final int maxDistance;
+        /**
+         * Word ids ordered by bucket, those of bucket <i>b</i> from
+         * <code>byLength[starts[b]]</code> to
+         * <code>byLength[starts[b + 1] - 1]</code>.
+         */
+        private final int[] byLength;
+        private final int[] starts = new int[MAX_BUCKET + 2];
+        /**
+         * Sorted <code>(deleteHash &lt;&lt; 32) | wordId</code> entries of the
+         * words of each length.
+         */
+        private final long[][] buckets = new long[MAX_BUCKET + 1][];
+        private final PhoneticIndex phonetic;
+        /**
+         * Words added to the dictionary after this layer was built.
+         */
+        volatile String[] added = new String[0];
+        /**
+         * Words of {@link #words} removed from the dictionary since, never
+         * modified once published.
+         */
+        volatile Set<String> removed = Collections.emptySet();
+
+        Layer(AbstractDictionary dictionary, int maxDistance) {
+            this.dictionary = dictionary;
+            this.maxDistance = maxDistance;
+            ArrayList<String> w = new ArrayList<String>(dictionary.getSize());
+            for (Iterator<String> it = dictionary.iterator(); it.hasNext();) {
+                w.add(it.next());
+            }
+            words = w.toArray(new String[w.size()]);
+            for (String word : words) {
+                starts[Math.min(word.length(), MAX_BUCKET) + 1]++;
+            }
+            for (int b = 1; b < starts.length; b++) {
+                starts[b] += starts[b - 1];
+            }
+            byLength = new int[words.length];
+            int[] next = Arrays.copyOf(starts, starts.length);
+            for (int id = 0; id < words.length; id++) {
+                byLength[next[Math.min(words[id].length(), MAX_BUCKET)]++] = id;
+            }
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = bucket(b);
+            }
+            phonetic = new PhoneticIndex(words);
+        }
+
+        /**
+         * Builds the entries of the words whose length falls in the given
+         * bucket.
+         */
+        private long[] bucket(int b) {
+            long[] e = new long[Math.max(16, (starts[b + 1] - starts[b]) * 16)];
+            int n = 0;
+            for (int k = starts[b]; k < starts[b + 1]; k++) {
+                int id = byLength[k];
+                for (long h : deletes(words[id], maxDistance)) {
+                    if (n == e.length) {
+                        e = Arrays.copyOf(e, e.length * 2);
+                    }
+                    e[n++] = (h << 32) | id;
+                }
+            }
+            return sortByHash(e, n);
+        }
+
+        void collect(Query q) {
+            Set<String> r = removed;
+            if (q.key.length() > 0) {
+                for (int id : phonetic.lookup(q.key)) {
+                    if (r.isEmpty() || !r.contains(words[id])) {
+                        q.verify(words[id]);
+                    }
+                }
+            }
+            // Longer or shorter words are turned down by verify() anyway
+            int reach = q.maxDistance + PHONETIC_SLACK;
+            int from = Math.max(0, q.word.length() - reach);
+            int to = Math.min(MAX_BUCKET, q.word.length() + reach);
+            for (int b = Math.min(from, MAX_BUCKET); b <= to; b++) {
+                long[] entries = buckets[b];
+                for (long h : q.deletes) {
+                    int i = Arrays.binarySearch(entries, h << 32);
+                    if (i < 0) {
+                        i = -i - 1;
+                    }
+                    for (; i < entries.length && (entries[i] >>> 32) == h; i++) {
+                        String w = words[(int) entries[i]];
+                        if (r.isEmpty() || !r.contains(w)) {
+                            q.verify(w);
+                        }
+                    }
+                }
+            }
+            for (String a : added) {
+                q.verify(a);
+            }
+        }
+    }
+
+    /**
+     * A lookup in progress.
+     */
+    private static class Query {
+
+        final String word;
+        final long[] deletes;
+        /**
+         * Phonetic key of the word.
+         */
+        final String key;
+        /**
+         * Sound spelling of the word.
+         */
+        final String spelling;
+        final int maxDistance;
+        final Map<String, Integer> levels;
+        final HashMap<String, Suggestion> found = new HashMap<String, Suggestion>();
+
+        Query(String word, long[] deletes, String key, int maxDistance,
+                Map<String, Integer> levels) {
+            this.word = word;
+            this.deletes = deletes;
+            this.key = key;
+            this.spelling = Metaphone.spell(word);
+            this.maxDistance = maxDistance;
+            this.levels = levels;
+        }
+
+        /**
+         * Records the candidate if it is close enough to the word.
+         */
+        void verify(String candidate) {
+            int lengthDelta = Math.abs(word.length() - candidate.length());
+            if (lengthDelta > maxDistance + PHONETIC_SLACK || found.containsKey(candidate)) {
+                return;
+            }
+            int d = distance(word, candidate, maxDistance + PHONETIC_SLACK);
+            boolean soundsAlike = d <= maxDistance + PHONETIC_SLACK
+                    && key.length() > 0 && key.equals(Metaphone.encode(candidate));
+            if (d <= maxDistance || soundsAlike) {
+                int spellingDistance = soundsAlike
+                        ? distance(spelling, Metaphone.spell(candidate), maxDistance + PHONETIC_SLACK)
+                        : maxDistance + PHONETIC_SLACK + 1;
+                Integer level = levels.get(candidate);
+                found.put(candidate, new Suggestion(candidate, d == 0,
+                        d > 0 && spellingDistance == 0 ? d - PHONETIC_SLACK : d,
+                        level == null ? UNKNOWN_LEVEL : level, spellingDistance, lengthDelta));
+            }
+        }
+    }
+
+    private static class Suggestion implements Comparable<Suggestion> {
+
+        final String word;
+        /**
+         * If the suggestion is the word looked up itself.
+         */
+        final boolean exact;
+        /**
+         * Edit distance, less the slack for a word of the same sound
+         * spelling.
+         */
+        final int rank;
+        final int level;
+        /**
+         * Distance of the sound spellings, beyond the maximum for a word not
+         * sounding alike.
+         */
+        final int spellingDistance;
+        final int lengthDelta;
+
+        Suggestion(String word, boolean exact, int rank, int level, int spellingDistance,
+                int lengthDelta) {
+            this.word = word;
+            this.exact = exact;
+            this.rank = rank;
+            this.level = level;
+            this.spellingDistance = spellingDistance;
+            this.lengthDelta = lengthDelta;
+        }
+
+        public int compareTo(Suggestion o) {
+            if (exact != o.exact) {
+                return exact ? -1 : 1;
+            }
+            if (rank != o.rank) {
+                return rank - o.rank;
+            }
+            if (level != o.level) {
+                return level - o.level;
+            }
+            if (spellingDistance != o.spellingDistance) {
+                return spellingDistance - o.spellingDistance;
+            }
+            if (lengthDelta != o.lengthDelta) {
+                return lengthDelta - o.lengthDelta;
+            }
+            return word.compareTo(o.word);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+/**
+ * Decides if a word is to be skipped by the spelling check, e.g. because it
+ * is a number. Filters are combined in a {@link TokenFilterChain}.
+ * Implementations are called concurrently from several
+ * {@link SpellCheckerTask}s, so they must be thread-safe, and they should not
+ * create objects as they run for every word.
+ * @author bsodhi
+ */
+public interface TokenFilter {
+
+    /**
+     * Checks if the given word is filtered.
+     * @param word Word to check, never empty.
+     * @return true if the word must not be checked, else false.
+     */
+    boolean isFiltered(CharSequence word);
+}
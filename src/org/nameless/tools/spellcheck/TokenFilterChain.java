@@ -0,0 +1,228 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+
+/**
+ * Ordered list of {@link TokenFilter}s. A word is filtered as soon as one of
+ * the filters says so, and the filters are run in the order of their
+ * estimated cost, cheapest first.
+ * <p>
+ * The built-in filters are hand-written scanners that neither throw nor
+ * create objects:
+ * <ul>
+ * <li>{@link NumberFilter}: numbers, e.g. 42, -3.5, 1e10</li>
+ * <li>{@link OrdinalFilter}: suffixed numbers, e.g. 23rd, 45th, 1970s</li>
+ * <li>{@link AbbreviationFilter}: single letters separated by dots, e.g.
+ * U.S.A</li>
+ * <li>{@link UpperCaseFilter}: words without lower case letters</li>
+ * </ul>
+ * @author bsodhi
+ */
+public class TokenFilterChain implements TokenFilter {
+
+    /**
+     * Cost of a filter deciding from the first char or two in most cases.
+     */
+    public static final int COST_LOW = 10;
+    /**
+     * Cost of a filter usually scanning the whole word.
+     */
+    public static final int COST_MEDIUM = 20;
+    /**
+     * Cost of an expensive filter, e.g. one doing lookups.
+     */
+    public static final int COST_HIGH = 30;
+
+    private final ArrayList<Entry> entries = new ArrayList<Entry>();
+    private volatile TokenFilter[] filters = new TokenFilter[0];
+
+    /**
+     * Creates the chain of the built-in filters.
+     * @param ignoreUpperCase If words in upper case are filtered.
+     * @return The filter chain.
+     */
+    public static TokenFilterChain createDefault(boolean ignoreUpperCase) {
+        TokenFilterChain chain = new TokenFilterChain();
+        chain.addFilter(new OrdinalFilter(), COST_LOW);
+        chain.addFilter(new NumberFilter(), COST_LOW);
+        chain.addFilter(new AbbreviationFilter(), COST_LOW);
+        if (ignoreUpperCase) {
+            chain.addFilter(new UpperCaseFilter(), COST_MEDIUM);
+        }
+        return chain;
+    }
+
+    /**
+     * Adds a filter. Filters with the same cost run in the order they were
+     * added.
+     * @param filter Filter to add.
+     * @param cost Estimated cost, e.g. {@link #COST_LOW}.
+     */
+    public synchronized void addFilter(TokenFilter filter, int cost) {
+        int i = 0;
+        while (i < entries.size() && entries.get(i).cost <= cost) {
+            i++;
+        }
+        entries.add(i, new Entry(filter, cost));
+        TokenFilter[] f = new TokenFilter[entries.size()];
+        for (int j = 0; j < f.length; j++) {
+            f[j] = entries.get(j).filter;
+        }
+        filters = f;
+    }
+
+    public boolean isFiltered(CharSequence word) {
+        for (TokenFilter f : filters) {
+            if (f.isFiltered(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+
+        private final TokenFilter filter;
+        private final int cost;
+
+        Entry(TokenFilter filter, int cost) {
+            this.filter = filter;
+            this.cost = cost;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Filters decimal numbers in the forms accepted by
+     * {@link Float#parseFloat(String)}: optional sign, digits with an optional
+     * fraction, optional exponent and an optional f/d type suffix.
+     */
+    public static class NumberFilter implements TokenFilter {
+
+        public boolean isFiltered(CharSequence word) {
+            int n = word.length();
+            int i = 0;
+            if (i < n && (word.charAt(i) == '+' || word.charAt(i) == '-')) {
+                i++;
+            }
+            int digits = 0;
+            while (i < n && isDigit(word.charAt(i))) {
+                i++;
+                digits++;
+            }
+            if (i < n && word.charAt(i) == '.') {
+                i++;
+                while (i < n && isDigit(word.charAt(i))) {
+                    i++;
+                    digits++;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (i < n && (word.charAt(i) == 'e' || word.charAt(i) == 'E')) {
+                i++;
+                if (i < n && (word.charAt(i) == '+' || word.charAt(i) == '-')) {
+                    i++;
+                }
+                int exp = i;
+                while (i < n && isDigit(word.charAt(i))) {
+                    i++;
+                }
+                if (i == exp) {
+                    return false;
+                }
+            }
+            if (i == n - 1) {
+                switch (word.charAt(i)) {
+                    case 'f':
+                    case 'F':
+                    case 'd':
+                    case 'D':
+                        i++;
+                }
+            }
+            return i == n;
+        }
+    }
+
+    /**
+     * Filters suffixed numbers e.g. 23rd, 45th, 1970s etc. Same as matching
+     * the lower case word against "[0-9]+(st|nd|rd|th|s)?".
+     */
+    public static class OrdinalFilter implements TokenFilter {
+
+        public boolean isFiltered(CharSequence word) {
+            int n = word.length();
+            int i = 0;
+            while (i < n && isDigit(word.charAt(i))) {
+                i++;
+            }
+            if (i == 0) {
+                return false;
+            }
+            switch (n - i) {
+                case 0:
+                    return true;
+                case 1:
+                    return Character.toLowerCase(word.charAt(i)) == 's';
+                case 2:
+                    char a = Character.toLowerCase(word.charAt(i));
+                    char b = Character.toLowerCase(word.charAt(i + 1));
+                    return (a == 's' && b == 't') || (a == 'n' && b == 'd')
+                            || (a == 'r' && b == 'd') || (a == 't' && b == 'h');
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Filters possible abbreviations, i.e. single ASCII letters separated by
+     * dots, optionally followed by dots. Same as splitting the word at the
+     * dots and matching every part against "[a-zA-Z]".
+     */
+    public static class AbbreviationFilter implements TokenFilter {
+
+        public boolean isFiltered(CharSequence word) {
+            int n = word.length();
+            int i = 0;
+            if (i < n && isLetter(word.charAt(i))) {
+                i++;
+                while (i + 1 < n && word.charAt(i) == '.' && isLetter(word.charAt(i + 1))) {
+                    i += 2;
+                }
+            }
+            while (i < n && word.charAt(i) == '.') {
+                i++;
+            }
+            return n > 0 && i == n;
+        }
+
+        private static boolean isLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
+
+    /**
+     * Filters words without any lower case letters.
+     */
+    public static class UpperCaseFilter implements TokenFilter {
+
+        public boolean isFiltered(CharSequence word) {
+            for (int i = 0, n = word.length(); i < n; i++) {
+                if (Character.isLowerCase(word.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
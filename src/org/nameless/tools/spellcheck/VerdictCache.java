@@ -0,0 +1,140 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+/**
+ * Cache of the verdicts of {@link SpellCheckerTask}s on single tokens, i.e.
+ * whether a token is a known word once filtered, split at hyphens and looked
+ * up. Text is dominated by a few thousand frequent words, so most tokens are
+ * then answered by one hash probe.
+ * <p>
+ * The cache is a direct mapped table of immutable entries, read and written
+ * by the tasks without any lock: a slot simply keeps the last token stored
+ * to it, and a racing write at worst replaces a verdict that will be
+ * computed again. Each entry records the {@link WordIndex#getVersion()
+ * version} of the index it was computed against and is ignored once the
+ * dictionaries change.
+ * <p>
+ * The verdicts also depend on the {@link TokenFilter} of the check, so a cache
+ * may only be shared by checks using the same filters.
+ * @author bsodhi
+ */
+public class VerdictCache {
+
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private final WordIndex index;
+    private final Verdict[] table;
+
+    /**
+     * Creates a cache of the default capacity.
+     * @param index Index the verdicts are looked up in.
+     */
+    public VerdictCache(WordIndex index) {
+        this(index, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache.
+     * @param index Index the verdicts are looked up in.
+     * @param capacity Number of slots, rounded up to a power of two.
+     */
+    public VerdictCache(WordIndex index, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int c = 1;
+        while (c < capacity) {
+            c <<= 1;
+        }
+        this.index = index;
+        table = new Verdict[c];
+    }
+
+    /**
+     * Index the verdicts are looked up in.
+     * @return The index.
+     */
+    public WordIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Current version of the index, to be read before computing a verdict
+     * that is then passed to {@link #put(String, boolean, int)}.
+     * @return The version.
+     */
+    public int getVersion() {
+        return index.getVersion();
+    }
+
+    /**
+     * Returns the cached verdict on a token.
+     * @param token The token as found in the text.
+     * @return TRUE if it is a known word, FALSE if not, null if not cached.
+     */
+    public Boolean get(CharSequence token) {
+        Verdict v = table[slotOf(token)];
+        if (v != null && v.version == index.getVersion() && contentEquals(v.token, token)) {
+            return v.known ? Boolean.TRUE : Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the verdict on a token.
+     * @param token The token as found in the text.
+     * @param known If it is a known word.
+     * @param version Version of the index read before computing the verdict.
+     */
+    public void put(String token, boolean known, int version) {
+        table[slotOf(token)] = new Verdict(token, known, version);
+    }
+
+    /**
+     * Slot of a token, from the same hash as {@link String#hashCode()}
+     * computed over its chars.
+     */
+    private int slotOf(CharSequence token) {
+        int h = 0;
+        for (int i = 0, n = token.length(); i < n; i++) {
+            h = 31 * h + token.charAt(i);
+        }
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    private static boolean contentEquals(String a, CharSequence b) {
+        int n = a.length();
+        if (b.length() != n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A verdict. The fields are final, so that an entry read without a lock is
+     * seen completely initialized.
+     */
+    private static class Verdict {
+
+        final String token;
+        final boolean known;
+        final int version;
+
+        Verdict(String token, boolean known, int version) {
+            this.token = token;
+            this.known = known;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+/**
+ * A {@link TokenFilter} telling which words it filters, so that the results
+ * of the checks made with it can be kept in a {@link ResultStore}. The
+ * results of a check with a user filter not implementing this interface are
+ * never stored, as a later run could not tell if the filter changed.
+ * @author bsodhi
+ */
+public interface VersionedTokenFilter extends TokenFilter {
+
+    /**
+     * Identity and version of this filter, including any setting changing
+     * the words it filters. Two filters of the same version must filter the
+     * same words, in any run.
+     * @return The version.
+     */
+    String getVersion();
+}
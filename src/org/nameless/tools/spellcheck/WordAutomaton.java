@@ -0,0 +1,432 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A minimal deterministic acyclic finite state automaton (DAFSA) holding a
+ * set of words. Common prefixes and common suffixes of the words share the
+ * same states, so the automaton is much smaller than the list of words it
+ * was built from, and membership is answered in O(word length).
+ * <p>
+ * Once built the automaton is immutable and is stored in a single
+ * {@link ByteBuffer} laid out as follows. Every state starts with an int
+ * header <code>(transitionCount &lt;&lt; 1) | finalBit</code> followed by its
+ * transitions sorted by label, each being a char label and the int offset of
+ * the target state. The root state is written last.
+ * <p>
+ * Lookups fold the case of the searched word one char at a time, so the words
+ * must be added in lower case.
+ * @author bsodhi
+ */
+public class WordAutomaton implements Iterable<String> {
+
+    /**
+     * Size of a state header in bytes.
+     */
+    static final int HEADER_SIZE = 4;
+    /**
+     * Size of a single transition in bytes (char label + int target).
+     */
+    static final int TRANSITION_SIZE = 6;
+
+    /**
+     * Encoded states.
+     */
+    private final ByteBuffer data;
+    /**
+     * Offset of the root state in {@link #data}.
+     */
+    private final int root;
+    /**
+     * Number of words accepted by this automaton.
+     */
+    private final int size;
+
+    /**
+     * Wraps already encoded automaton data.
+     * @param data Encoded states.
+     * @param root Offset of the root state.
+     * @param size Number of words in the automaton.
+     */
+    WordAutomaton(ByteBuffer data, int root, int size) {
+        this.data = data;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Builds a minimal automaton from the given words. The list must be
+     * sorted; duplicates are ignored.
+     * @param sortedWords Lower case words in sorted order.
+     * @return Automaton accepting exactly the given words.
+     */
+    public static WordAutomaton build(List<String> sortedWords) {
+        Builder builder = new Builder();
+        for (String word : sortedWords) {
+            builder.add(word);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Number of words accepted by this automaton.
+     * @return Word count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of bytes used to store the states.
+     * @return Size of the encoded automaton in bytes.
+     */
+    public int getByteSize() {
+        return data.limit();
+    }
+
+    /**
+     * Encoded states, positioned at the first byte.
+     * @return A read-only view of the automaton data.
+     */
+    ByteBuffer getData() {
+        ByteBuffer view = data.asReadOnlyBuffer();
+        view.clear();
+        return view;
+    }
+
+    /**
+     * Offset of the root state.
+     * @return Root state offset.
+     */
+    int getRoot() {
+        return root;
+    }
+
+    /**
+     * Checks if the given word is accepted by this automaton. The word is
+     * converted to lower case one char at a time while it is being searched.
+     * @param word Word to search.
+     * @return true if the word exists, else false.
+     */
+    public boolean contains(CharSequence word) {
+        return contains(word, 0, word.length());
+    }
+
+    /**
+     * Checks if a part of the given text is a word accepted by this
+     * automaton.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return true if the word exists, else false.
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        int state = root;
+        for (int i = start; i < end && state >= 0; i++) {
+            state = next(state, Character.toLowerCase(text.charAt(i)));
+        }
+        return state >= 0 && isFinal(state);
+    }
+
+    /**
+     * Iterates over the accepted words in sorted order.
+     * @return Iterator over the words.
+     */
+    public Iterator<String> iterator() {
+        return new WordIterator();
+    }
+
+    /**
+     * Follows the transition labelled <code>label</code> out of the given
+     * state.
+     * @param state State offset.
+     * @param label Transition label.
+     * @return Offset of the target state or -1 if there is no such transition.
+     */
+    int next(int state, char label) {
+        int lo = 0;
+        int hi = (data.getInt(state) >>> 1) - 1;
+        int base = state + HEADER_SIZE;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int pos = base + mid * TRANSITION_SIZE;
+            char c = data.getChar(pos);
+            if (c < label) {
+                lo = mid + 1;
+            } else if (c > label) {
+                hi = mid - 1;
+            } else {
+                return data.getInt(pos + 2);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * If the given state accepts, i.e. it ends a word.
+     * @param state State offset.
+     * @return true if final.
+     */
+    boolean isFinal(int state) {
+        return (data.getInt(state) & 1) != 0;
+    }
+
+    /**
+     * Depth first walk of the automaton, yielding the words in sorted order.
+     * The current word is kept in a buffer, one char per level of the stack.
+     */
+    private class WordIterator implements Iterator<String> {
+
+        private int[] states = new int[32];
+        private int[] transitions = new int[32];
+        private int depth;
+        private final StringBuilder word = new StringBuilder();
+        private String next;
+
+        WordIterator() {
+            states[0] = root;
+            transitions[0] = -1;
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String current = next;
+            advance();
+            return current;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                int state = states[depth];
+                int t = transitions[depth]++;
+                if (t < 0) {
+                    if (isFinal(state)) {
+                        next = word.toString();
+                        return;
+                    }
+                } else if (t < (data.getInt(state) >>> 1)) {
+                    int pos = state + HEADER_SIZE + t * TRANSITION_SIZE;
+                    word.append(data.getChar(pos));
+                    if (++depth == states.length) {
+                        states = Arrays.copyOf(states, depth * 2);
+                        transitions = Arrays.copyOf(transitions, depth * 2);
+                    }
+                    states[depth] = data.getInt(pos + 2);
+                    transitions[depth] = -1;
+                } else {
+                    depth--;
+                    word.setLength(Math.max(depth, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Incrementally builds a minimal automaton from words supplied in sorted
+     * order, using the algorithm by Daciuk et al. Only the states on the path
+     * of the last added word are kept mutable, everything else is already
+     * minimized and held in the register of unique states.
+     */
+    public static class Builder {
+
+        private final HashMap<State, State> register = new HashMap<State, State>();
+        private final ArrayList<State> path = new ArrayList<State>();
+        private String previous;
+        private int size;
+
+        public Builder() {
+            path.add(new State());
+        }
+
+        /**
+         * Adds the next word. Words must arrive in sorted order, an equal
+         * word is ignored.
+         * @param word Lower case word.
+         */
+        public void add(String word) {
+            if (previous != null) {
+                int cmp = previous.compareTo(word);
+                if (cmp == 0) {
+                    return;
+                }
+                if (cmp > 0) {
+                    throw new IllegalArgumentException("Words are not sorted: "
+                            + previous + " > " + word);
+                }
+            }
+            int prefix = 0;
+            if (previous != null) {
+                int max = Math.min(previous.length(), word.length());
+                while (prefix < max && previous.charAt(prefix) == word.charAt(prefix)) {
+                    prefix++;
+                }
+            }
+            minimize(prefix);
+            State state = path.get(prefix);
+            for (int i = prefix; i < word.length(); i++) {
+                State child = new State();
+                state.addTransition(word.charAt(i), child);
+                path.add(child);
+                state = child;
+            }
+            state.accept = true;
+            previous = word;
+            size++;
+        }
+
+        /**
+         * Completes the minimization and encodes the automaton.
+         * @return The built automaton.
+         */
+        public WordAutomaton build() {
+            minimize(0);
+            State root = path.get(0);
+            IdentityHashMap<State, Integer> offsets = new IdentityHashMap<State, Integer>();
+            int bytes = measure(root, new IdentityHashMap<State, Boolean>());
+            ByteBuffer data = ByteBuffer.allocate(bytes);
+            int rootOffset = write(root, data, offsets);
+            data.flip();
+            register.clear();
+            return new WordAutomaton(data, rootOffset, size);
+        }
+
+        /**
+         * Replaces or registers the states of the current path below the given
+         * depth, so that only the first <code>depth</code> states stay
+         * mutable.
+         */
+        private void minimize(int depth) {
+            for (int i = path.size() - 1; i > depth; i--) {
+                State child = path.remove(i);
+                State existing = register.get(child);
+                if (existing != null) {
+                    path.get(i - 1).replaceLastTarget(existing);
+                } else {
+                    register.put(child, child);
+                }
+            }
+        }
+
+        private int measure(State state, IdentityHashMap<State, Boolean> seen) {
+            if (seen.put(state, Boolean.TRUE) != null) {
+                return 0;
+            }
+            int bytes = HEADER_SIZE + state.count * TRANSITION_SIZE;
+            for (int i = 0; i < state.count; i++) {
+                bytes += measure(state.targets[i], seen);
+            }
+            return bytes;
+        }
+
+        /**
+         * Writes the given state after all the states reachable from it and
+         * returns its offset.
+         */
+        private int write(State state, ByteBuffer data,
+                IdentityHashMap<State, Integer> offsets) {
+            Integer known = offsets.get(state);
+            if (known != null) {
+                return known;
+            }
+            int[] targets = new int[state.count];
+            for (int i = 0; i < state.count; i++) {
+                targets[i] = write(state.targets[i], data, offsets);
+            }
+            int offset = data.position();
+            data.putInt((state.count << 1) | (state.accept ? 1 : 0));
+            for (int i = 0; i < state.count; i++) {
+                data.putChar(state.labels[i]);
+                data.putInt(targets[i]);
+            }
+            offsets.put(state, offset);
+            return offset;
+        }
+    }
+
+    /**
+     * Mutable state used while building. Two states are equal when both are
+     * final or not and they have the same transitions to the very same
+     * (already minimized) target states.
+     */
+    private static class State {
+
+        private char[] labels = new char[2];
+        private State[] targets = new State[2];
+        private int count;
+        private boolean accept;
+
+        void addTransition(char label, State target) {
+            if (count == labels.length) {
+                char[] l = new char[count * 2];
+                State[] t = new State[count * 2];
+                System.arraycopy(labels, 0, l, 0, count);
+                System.arraycopy(targets, 0, t, 0, count);
+                labels = l;
+                targets = t;
+            }
+            labels[count] = label;
+            targets[count] = target;
+            count++;
+        }
+
+        void replaceLastTarget(State target) {
+            targets[count - 1] = target;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = accept ? 1 : 0;
+            for (int i = 0; i < count; i++) {
+                h = h * 31 + labels[i];
+                h = h * 31 + System.identityHashCode(targets[i]);
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State)) {
+                return false;
+            }
+            State other = (State) obj;
+            if (other.accept != accept || other.count != count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (labels[i] != other.labels[i] || targets[i] != other.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Single index over all the active dictionaries, so that a word is looked up
+ * once instead of once per dictionary. It has two layers: the system
+ * dictionary, which is large and immutable and is used as it is, and one
+ * hash table merging the words of every custom dictionary. Each word of the
+ * custom layer carries a bit mask telling which dictionaries it came from.
+ * <p>
+ * Bit 0 of a source mask stands for the system dictionary and bit
+ * <i>n</i> for the <i>n</i>-th custom dictionary added; dictionaries beyond
+ * the 31st share the last bit.
+ * <p>
+ * Custom dictionaries keeping their words {@link AbstractDictionary#isOffHeap()
+ * off the heap} are not merged into the hash table, which would bring their
+ * words back onto the heap, but looked up in place after it.
+ * <p>
+ * The custom layer is copy-on-write: readers never lock, while adding a
+ * dictionary or a word builds a patched copy of the table and publishes it.
+ * The index listens to its custom dictionaries, so words added to them are
+ * patched in as well. Every change to any of the dictionaries bumps the
+ * {@link #getVersion() version} of the index.
+ * @author bsodhi
+ */
+public class WordIndex implements DictionaryListener {
+
+    /**
+     * Source mask bit of the system dictionary.
+     */
+    public static final int SYSTEM_SOURCE = 1;
+    private static final int MAX_SOURCES = 32;
+
+    private final AbstractDictionary system;
+    /**
+     * Custom dictionaries in the order of their source bits.
+     */
+    private volatile List<AbstractDictionary> sources = Collections.emptyList();
+    /**
+     * Merged words of the custom dictionaries.
+     */
+    private volatile Layer custom = new Layer(16);
+    /**
+     * Custom dictionaries looked up in place, and their source bits.
+     */
+    private volatile InPlace[] inPlace = new InPlace[0];
+    /**
+     * Number of changes made to the dictionaries.
+     */
+    private volatile int version;
+
+    /**
+     * Creates an index over the given system dictionary and no custom
+     * dictionaries.
+     * @param system The system dictionary.
+     */
+    public WordIndex(AbstractDictionary system) {
+        this.system = system;
+        system.addDictionaryListener(this);
+    }
+
+    /**
+     * Version of the indexed vocabulary, which changes whenever a dictionary
+     * or a word is added, removed or reloaded, or the custom dictionaries are
+     * cleared. Results
+     * derived from the index are valid as long as the version stays the same.
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks if the given word exists in any of the dictionaries.
+     * @param word Word to search.
+     * @return true if the word exists, else false.
+     */
+    public boolean contains(String word) {
+        return contains(word, 0, word.length());
+    }
+
+    /**
+     * Checks if a part of the given text is a word of any of the
+     * dictionaries. The case of the chars is folded while searching, so that
+     * a token can be looked up where it was found without creating any
+     * objects, unless {@link CaseFolding} has it folded as a whole.
+     * @param text Text holding the word.
+     * @param start Offset of the word in the text.
+     * @param end Offset just after the word.
+     * @return true if the word exists, else false.
+     */
+    public boolean contains(CharSequence text, int start, int end) {
+        if (!CaseFolding.isPerChar(text, start, end)) {
+            String folded = CaseFolding.fold(text, start, end);
+            text = folded;
+            start = 0;
+            end = folded.length();
+        }
+        if (system.containsWord(text, start, end) || custom.get(text, start, end) != 0) {
+            return true;
+        }
+        for (InPlace d : inPlace) {
+            if (d.dictionary.containsWord(text, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the dictionaries containing the given word.
+     * @param word Word to search.
+     * @return Source mask of the word, 0 if no dictionary has it.
+     * @see #getSource(int)
+     */
+    public int getSources(String word) {
+        int mask = custom.get(word, 0, word.length());
+        if (system.containsWord(word)) {
+            mask |= SYSTEM_SOURCE;
+        }
+        for (InPlace d : inPlace) {
+            if (d.dictionary.containsWord(word)) {
+                mask |= d.bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the dictionary standing for the given bit of a source mask.
+     * @param bit Bit number, 0 for the system dictionary.
+     * @return The dictionary or null if no dictionary uses that bit.
+     */
+    public AbstractDictionary getSource(int bit) {
+        if (bit == 0) {
+            return system;
+        }
+        List<AbstractDictionary> s = sources;
+        return bit <= s.size() ? s.get(bit - 1) : null;
+    }
+
+    /**
+     * Adds a custom dictionary to the index.
+     * @param dictionary Custom dictionary.
+     */
+    public void addDictionary(AbstractDictionary dictionary) {
+        addDictionaries(Collections.singletonList(dictionary));
+    }
+
+    /**
+     * Adds several custom dictionaries to the index, patching the table once.
+     * @param dictionaries Custom dictionaries.
+     */
+    public synchronized void addDictionaries(Collection<? extends AbstractDictionary> dictionaries) {
+        ArrayList<AbstractDictionary> s = new ArrayList<AbstractDictionary>(sources);
+        int words = 0;
+        for (AbstractDictionary d : dictionaries) {
+            if (!d.isOffHeap()) {
+                words += d.getSize();
+            }
+        }
+        Layer layer = custom.copy(words);
+        ArrayList<InPlace> p = new ArrayList<InPlace>(Arrays.asList(inPlace));
+        for (AbstractDictionary d : dictionaries) {
+            s.add(d);
+            int bit = bitOf(s.size() - 1);
+            // Listen before copying: a change made during the copy waits for
+            // this lock and is then applied to the new layer, never lost.
+            d.addDictionaryListener(this);
+            if (d.isOffHeap()) {
+                p.add(new InPlace(d, bit));
+            } else {
+                for (Iterator<String> it = d.iterator(); it.hasNext();) {
+                    layer.put(it.next(), bit);
+                }
+            }
+        }
+        sources = Collections.unmodifiableList(s);
+        custom = layer;
+        inPlace = p.toArray(new InPlace[p.size()]);
+        version++;
+    }
+
+    /**
+     * Removes all the custom dictionaries from the index.
+     */
+    public synchronized void clearDictionaries() {
+        for (AbstractDictionary d : sources) {
+            d.removeDictionaryListener(this);
+        }
+        sources = Collections.emptyList();
+        custom = new Layer(16);
+        inPlace = new InPlace[0];
+        version++;
+    }
+
+    /**
+     * Patches the words added to or removed from one of the custom
+     * dictionaries into the index, copying the table once. The system
+     * dictionary already has them. A removed word is kept if another
+     * dictionary sharing its source bit still has it.
+     */
+    public synchronized void wordsChanged(AbstractDictionary dictionary,
+            Collection<String> added, Collection<String> removed) {
+        int i = sources.indexOf(dictionary);
+        if (i >= 0 && !dictionary.isOffHeap()) {
+            int bit = bitOf(i);
+            Layer layer = custom.copy(added.size());
+            for (String word : added) {
+                layer.put(word, bit);
+            }
+            for (String word : removed) {
+                boolean shared = false;
+                for (int j = 0; j < sources.size(); j++) {
+                    if (j != i && bitOf(j) == bit && sources.get(j).containsWord(word)) {
+                        shared = true;
+                    }
+                }
+                if (!shared) {
+                    layer.clear(word, bit);
+                }
+            }
+            custom = layer;
+        }
+        version++;
+    }
+
+    /**
+     * Rebuilds the custom layer from the current words of the custom
+     * dictionaries, and swaps it in at once.
+     */
+    public synchronized void dictionaryReloaded(AbstractDictionary dictionary) {
+        int i = sources.indexOf(dictionary);
+        if (i >= 0 && !dictionary.isOffHeap()) {
+            int words = 0;
+            for (AbstractDictionary d : sources) {
+                if (!d.isOffHeap()) {
+                    words += d.getSize();
+                }
+            }
+            Layer layer = new Layer(words);
+            for (int j = 0; j < sources.size(); j++) {
+                if (sources.get(j).isOffHeap()) {
+                    continue;
+                }
+                int bit = bitOf(j);
+                for (Iterator<String> it = sources.get(j).iterator(); it.hasNext();) {
+                    layer.put(it.next(), bit);
+                }
+            }
+            custom = layer;
+        }
+        version++;
+    }
+
+    private static int bitOf(int customIndex) {
+        return 1 << Math.min(customIndex + 1, MAX_SOURCES - 1);
+    }
+
+    /**
+     * Custom dictionary looked up in place.
+     */
+    private static class InPlace {
+
+        final AbstractDictionary dictionary;
+        final int bit;
+
+        InPlace(AbstractDictionary dictionary, int bit) {
+            this.dictionary = dictionary;
+            this.bit = bit;
+        }
+    }
+
+    /**
+     * Open addressing hash table of lower case words and their source masks.
+     * Lookups fold the case of the searched word while hashing and comparing,
+     * so they do not create any objects.
+     */
+    private static class Layer {
+
+        private final String[] keys;
+        private final int[] masks;
+        private int size;
+
+        Layer(int capacity) {
+            int c = 16;
+            while (c < capacity * 2) {
+                c <<= 1;
+            }
+            keys = new String[c];
+            masks = new int[c];
+        }
+
+        /**
+         * Copies this layer into a new one with room for the given number of
+         * additional words, leaving out the words without sources.
+         */
+        Layer copy(int extra) {
+            Layer l = new Layer(size + extra);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && masks[i] != 0) {
+                    l.put(keys[i], masks[i]);
+                }
+            }
+            return l;
+        }
+
+        void put(String word, int mask) {
+            int m = keys.length - 1;
+            int i = hash(word) & m;
+            while (keys[i] != null) {
+                if (keys[i].equals(word)) {
+                    masks[i] |= mask;
+                    return;
+                }
+                i = (i + 1) & m;
+            }
+            keys[i] = word;
+            masks[i] = mask;
+            size++;
+        }
+
+        /**
+         * Clears a bit of the source mask of a word. A word left without
+         * sources stays in the table with an empty mask until the table is
+         * copied.
+         */
+        void clear(String word, int mask) {
+            int m = keys.length - 1;
+            for (int i = hash(word) & m; keys[i] != null; i = (i + 1) & m) {
+                if (keys[i].equals(word)) {
+                    masks[i] &= ~mask;
+                    return;
+                }
+            }
+        }
+
+        int get(CharSequence text, int start, int end) {
+            int m = keys.length - 1;
+            int i = hash(text, start, end) & m;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (equalsIgnoreCase(key, text, start, end)) {
+                    return masks[i];
+                }
+                i = (i + 1) & m;
+            }
+            return 0;
+        }
+
+        private static int hash(CharSequence word) {
+            return hash(word, 0, word.length());
+        }
+
+        private static int hash(CharSequence text, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + Character.toLowerCase(text.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean equalsIgnoreCase(String key, CharSequence text, int start,
+                int end) {
+            int n = key.length();
+            if (end - start != n) {
+                return false;
+            }
+            for (int i = 0; i < n; i++) {
+                if (key.charAt(i) != Character.toLowerCase(text.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.Collection;
+
+/**
+ * Splits text into words in a single pass. Words are separated by spaces and
+ * by the configured delimiter chars, which are looked up in a precomputed
+ * table. Each word is trimmed and has the punctuation around it and the
+ * common shorthand suffixes (He's, They're etc.) removed, all by moving its
+ * start and end offsets, so no intermediate strings are created.
+ * <p>
+ * A tokenizer is immutable and can be shared by any number of threads; the
+ * {@link Token} cursors it hands out are not.
+ * @author bsodhi
+ */
+public class WordTokenizer {
+
+    /**
+     * Common suffixes added to words as shorthands. For example, s (He's),
+     * re (They're), ll (She'll) etc.
+     */
+    private static final String[] COMMON_SUFFIX = {"s", "re", "ll", "d", "t", "ve"};
+    /**
+     * Bit set of the delimiter chars, one bit per char value.
+     */
+    private final long[] delimiters = new long[1024];
+
+    /**
+     * Creates a tokenizer splitting words at spaces and the given chars.
+     * @param delims Delimiter char values.
+     */
+    public WordTokenizer(Collection<Integer> delims) {
+        set(' ');
+        for (int x : delims) {
+            set((char) x);
+        }
+    }
+
+    private void set(char c) {
+        delimiters[c >>> 6] |= 1L << c;
+    }
+
+    /**
+     * If the given char separates words.
+     * @param c Char to check.
+     * @return true if it is a delimiter.
+     */
+    public boolean isDelimiter(char c) {
+        return (delimiters[c >>> 6] & (1L << c)) != 0;
+    }
+
+    /**
+     * Returns a cursor over the words of the given text.
+     * @param text Text to tokenize.
+     * @return Cursor positioned before the first word.
+     */
+    public Token tokenize(CharSequence text) {
+        return new Token(text, 0);
+    }
+
+    /**
+     * Returns a cursor over the words of the given text starting at the given
+     * offset, which should be the start of the text or a delimiter.
+     * @param text Text to tokenize.
+     * @param from Offset to start at.
+     * @return Cursor positioned before the first word at or after the offset.
+     */
+    public Token tokenize(CharSequence text, int from) {
+        return new Token(text, from);
+    }
+
+    /**
+     * Cursor over the words of a text. After each successful {@link #next()}
+     * it is the current word, as a view over the text.
+     */
+    public class Token implements CharSequence {
+
+        private final CharSequence text;
+        private int pos;
+        private int start;
+        private int end;
+        private boolean endsWithPunctuation;
+
+        Token(CharSequence text, int from) {
+            this.text = text;
+            this.pos = from;
+        }
+
+        /**
+         * Moves to the next word.
+         * @return false if there are no more words.
+         */
+        public boolean next() {
+            int n = text.length();
+            while (pos < n && isDelimiter(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos == n) {
+                start = end = n;
+                return false;
+            }
+            int s = pos;
+            while (pos < n && !isDelimiter(text.charAt(pos))) {
+                pos++;
+            }
+            int e = pos;
+            // Trim as String.trim() does
+            while (s < e && text.charAt(s) <= ' ') {
+                s++;
+            }
+            while (s < e && text.charAt(e - 1) <= ' ') {
+                e--;
+            }
+            endsWithPunctuation = endsWithPunctuation(s, e);
+            strip(s, e);
+            return true;
+        }
+
+        /**
+         * If the word ended with one of ",.!?;" before its punctuation was
+         * removed.
+         * @return true if it ended with a punctuation mark.
+         */
+        public boolean endsWithPunctuation() {
+            return endsWithPunctuation;
+        }
+
+        /**
+         * Offset of the current word in the text.
+         * @return Start offset.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Offset just after the current word in the text.
+         * @return End offset.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Offset in the text where the search for the next word resumes, i.e.
+         * just after the current word including any chars stripped from its
+         * end.
+         * @return Scan position.
+         */
+        public int getScanPosition() {
+            return pos;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return text.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+
+        /**
+         * Same as matching the word against the regular expression
+         * ".*[,.!?;]", where '.' does not match line terminators.
+         */
+        private boolean endsWithPunctuation(int s, int e) {
+            if (s == e) {
+                return false;
+            }
+            switch (text.charAt(e - 1)) {
+                case ',':
+                case '.':
+                case '!':
+                case '?':
+                case ';':
+                    break;
+                default:
+                    return false;
+            }
+            for (int i = s; i < e - 1; i++) {
+                switch (text.charAt(i)) {
+                    case '\n':
+                    case '\r':
+                    case '\u0085':
+                    case '\u2028':
+                    case '\u2029':
+                        return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes the shorthand suffix and any non-letter chars from both
+         * ends, repeating until nothing changes.
+         */
+        private void strip(int s, int e) {
+            int length;
+            do {
+                length = e - s;
+                if (length == 0) {
+                    break;
+                }
+                for (String cs : COMMON_SUFFIX) {
+                    int l = cs.length();
+                    if (e - s > l && endsWith(s, e, cs)) {
+                        char q = text.charAt(e - l - 1);
+                        if (q == '\'' || q == '’') {
+                            e -= l + 1;
+                            break;
+                        }
+                    }
+                }
+                if (e > s) {
+                    boolean firstIsLetter = isLetter(text.charAt(s));
+                    if (!isLetter(text.charAt(e - 1))) {
+                        e--;
+                    }
+                    if (e > s && !firstIsLetter) {
+                        s++;
+                    }
+                }
+            } while (e - s != length);
+            start = s;
+            end = e;
+        }
+
+        private boolean endsWith(int s, int e, String suffix) {
+            for (int i = suffix.length() - 1, j = e - 1; i >= 0; i--, j--) {
+                if (text.charAt(j) != suffix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isLetter(char c) {
+            int type = Character.getType(c);
+            return type == Character.LOWERCASE_LETTER
+                    || type == Character.UPPERCASE_LETTER;
+        }
+    }
+}
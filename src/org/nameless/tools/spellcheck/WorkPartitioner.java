@@ -0,0 +1,283 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import org.nameless.tools.spellcheck.io.TextSource;
+
+/**
+ * Groups the chunks read from a {@link TextSource} into work units of about
+ * the same size for the {@link SpellCheckerTask}s. Paragraphs much smaller
+ * than the target size are coalesced into one unit, so that the per task
+ * overhead is shared, while paragraphs much larger than the target size are
+ * split at word boundaries, so that a single huge paragraph still keeps all
+ * the threads busy. A chunk that does not end its paragraph is joined with
+ * the next one, so that the split does not depend on where the source cut
+ * its chunks.
+ * <p>
+ * A unit is an array of {@link Segment}s; every segment is checked as a
+ * paragraph of its own, so coalescing does not change the errors found. When
+ * compound words are being looked for, a paragraph is only split where the
+ * task flushes the pending compound word anyway: after a word ending with a
+ * punctuation mark, or before a word of the index. A paragraph without such
+ * a place is not split.
+ * @author bsodhi
+ */
+public class WorkPartitioner {
+
+    /**
+     * Default size of a work unit, in chars.
+     */
+    public static final int DEFAULT_TARGET_SIZE = 16 * 1024;
+    private final TextSource source;
+    private final WordTokenizer tokenizer;
+    private final int targetSize;
+    /**
+     * Index of the check when compound words are looked for, else null.
+     */
+    private final WordIndex compoundIndex;
+    /**
+     * Segments read from the source but not yet handed out.
+     */
+    private final LinkedList<Segment> pending = new LinkedList<Segment>();
+    private boolean eof;
+    /**
+     * Sequence number of the paragraph being read.
+     */
+    private int paragraph;
+    /**
+     * Text of the paragraph being read not yet split into segments, if its
+     * last chunk did not end it.
+     */
+    private String carry;
+    /**
+     * Offset of {@link #carry} in its paragraph.
+     */
+    private int offset;
+    /**
+     * Offset of the paragraph being read in the document.
+     */
+    private long paragraphOffset;
+
+    /**
+     * Creates a partitioner reading from the given source.
+     * @param source Source of the text.
+     * @param tokenizer Tokenizer used to find the word boundaries.
+     * @param targetSize Target size of a work unit, in chars.
+     * @param compoundIndex Index the words are checked against when compound
+     * words are looked for, so that paragraphs are only split where the
+     * compound words end; null otherwise.
+     */
+    public WorkPartitioner(TextSource source, WordTokenizer tokenizer,
+            int targetSize, WordIndex compoundIndex) {
+        if (targetSize < 1) {
+            throw new IllegalArgumentException("targetSize: " + targetSize);
+        }
+        this.source = source;
+        this.tokenizer = tokenizer;
+        this.targetSize = targetSize;
+        this.compoundIndex = compoundIndex;
+    }
+
+    /**
+     * Returns the next work unit.
+     * @return Segments of the unit, or null when the source is exhausted.
+     * @throws java.io.IOException
+     */
+    public Segment[] nextUnit() throws IOException {
+        ArrayList<Segment> unit = new ArrayList<Segment>();
+        int size = 0;
+        while (true) {
+            while (pending.isEmpty() && read()) {
+                // A chunk continuing a paragraph may give no segment yet
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+            Segment next = pending.getFirst();
+            if (!unit.isEmpty() && size + next.text.length() > targetSize) {
+                break;
+            }
+            unit.add(pending.removeFirst());
+            size += next.text.length();
+        }
+        return unit.isEmpty() ? null : unit.toArray(new Segment[unit.size()]);
+    }
+
+    /**
+     * Reads the next chunk into the pending segments, split if too large.
+     * @return false if the source is exhausted.
+     */
+    private boolean read() throws IOException {
+        if (eof) {
+            return false;
+        }
+        String chunk = source.nextChunk();
+        if (chunk == null) {
+            eof = true;
+            if (carry == null) {
+                return false;
+            }
+            // The source ended without ending its last paragraph
+            split("", true);
+            return true;
+        }
+        if (carry == null) {
+            paragraphOffset = source.getOffset();
+        }
+        split(chunk, source.isParagraphEnd());
+        return true;
+    }
+
+    /**
+     * Splits a chunk, joined with the text carried over from the previous
+     * one, into pending segments. Unless the chunk ends its paragraph, the
+     * text after the last cut is carried over to the next chunk.
+     */
+    private void split(String chunk, boolean paragraphEnd) {
+        String text = carry == null ? chunk : carry + chunk;
+        carry = null;
+        int maxSize = targetSize * 2;
+        int pos = 0;
+        while (text.length() - pos > maxSize) {
+            int cut = findCut(text, pos);
+            if (cut < 0) {
+                break;
+            }
+            pending.add(new Segment(CharBuffer.wrap(text, pos, cut), paragraph,
+                    paragraphOffset, offset + pos));
+            pos = cut;
+        }
+        if (paragraphEnd) {
+            pending.add(new Segment(pos == 0 ? text : CharBuffer.wrap(text, pos, text.length()),
+                    paragraph, paragraphOffset, offset + pos));
+            paragraph++;
+            offset = 0;
+        } else {
+            carry = pos == 0 ? text : text.substring(pos);
+            offset += pos;
+        }
+    }
+
+    /**
+     * Finds where to cut after at least the target size from the given
+     * position: at the next word boundary, or when finding compound words at
+     * the next place where the compound word is flushed.
+     * @return Offset to cut at or -1 if there is no such place.
+     */
+    private int findCut(String text, int from) {
+        int n = text.length();
+        int boundary = from + targetSize;
+        while (boundary < n && !tokenizer.isDelimiter(text.charAt(boundary))) {
+            boundary++;
+        }
+        if (boundary >= n) {
+            return -1;
+        }
+        if (compoundIndex == null) {
+            return boundary;
+        }
+        WordTokenizer.Token token = tokenizer.tokenize(text, boundary);
+        int before = boundary;
+        while (token.next()) {
+            int after = token.getScanPosition();
+            if (after == n) {
+                break;
+            }
+            if (isKnown(compoundIndex, token)) {
+                // The task flushes the compound word before this one
+                return before;
+            }
+            if (token.endsWithPunctuation()) {
+                return after;
+            }
+            before = after;
+        }
+        return -1;
+    }
+
+    /**
+     * Tells if a token is certainly found by the task, which then flushes the
+     * pending compound word. Hyphenated words are checked part by part by the
+     * task and are not looked at here.
+     * @param index Index the task checks the words against.
+     * @param token Token to look at.
+     * @return true if the token is found.
+     */
+    static boolean isKnown(WordIndex index, CharSequence token) {
+        int n = token.length();
+        for (int i = 0; i < n; i++) {
+            char c = token.charAt(i);
+            if (c == '-') {
+                return false;
+            }
+        }
+        return n == 0 || index.contains(token, 0, n);
+    }
+
+    /**
+     * Part of a paragraph read from the source, checked as a whole by one
+     * task.
+     */
+    public static class Segment {
+
+        private final CharSequence text;
+        private final int paragraph;
+        private final long paragraphOffset;
+        private final int offset;
+
+        /**
+         * Creates a segment.
+         * @param text Text of the segment.
+         * @param paragraph Sequence number of the paragraph, from 0.
+         * @param paragraphOffset Offset of the paragraph in the document.
+         * @param offset Offset of the segment in its paragraph.
+         */
+        public Segment(CharSequence text, int paragraph, long paragraphOffset, int offset) {
+            this.text = text;
+            this.paragraph = paragraph;
+            this.paragraphOffset = paragraphOffset;
+            this.offset = offset;
+        }
+
+        /**
+         * Text of this segment.
+         * @return The text.
+         */
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * Sequence number of the paragraph this segment is part of, counted
+         * from 0 in the order the source returned them.
+         * @return Paragraph number.
+         */
+        public int getParagraph() {
+            return paragraph;
+        }
+
+        /**
+         * Offset of the paragraph of this segment in the document, as the
+         * source gave it.
+         * @return Char offset.
+         * @see TextSource#getOffset()
+         */
+        public long getParagraphOffset() {
+            return paragraphOffset;
+        }
+
+        /**
+         * Offset of this segment in its paragraph.
+         * @return Char offset.
+         */
+        public int getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+import java.io.IOException;
+
+/**
+ * Base class for the sources decoding text into a fixed size buffer. A chunk
+ * is cut after the last white space in the full buffer and the rest is
+ * carried over to the next chunk; only a word longer than the whole buffer is
+ * cut in the middle. The whole text is one paragraph, so only the last chunk
+ * ends it.
+ * @author bsodhi
+ */
+public abstract class ChunkedTextSource implements TextSource {
+
+    /**
+     * Decoded chars, the first {@link #length} of them are valid.
+     */
+    protected final char[] buffer;
+    /**
+     * Number of chars in the buffer.
+     */
+    protected int length;
+    /**
+     * Set once all the input has been decoded into the buffer.
+     */
+    protected boolean eof;
+    private boolean paragraphEnd;
+    /**
+     * Offsets of the chunk last returned and of the next one.
+     */
+    private long offset;
+    private long position;
+
+    /**
+     * @param chunkSize Maximum size of a chunk, in chars.
+     */
+    protected ChunkedTextSource(int chunkSize) {
+        if (chunkSize < 2) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.buffer = new char[chunkSize];
+    }
+
+    /**
+     * Decodes more input into the buffer until it is full or the input is
+     * exhausted, in which case {@link #eof} must be set.
+     * @throws java.io.IOException
+     */
+    protected abstract void fill() throws IOException;
+
+    public String nextChunk() throws IOException {
+        if (!eof && length < buffer.length) {
+            fill();
+        }
+        if (length == 0) {
+            return null;
+        }
+        int cut = eof ? length : findCut();
+        paragraphEnd = eof;
+        offset = position;
+        position += cut;
+        String chunk = new String(buffer, 0, cut);
+        System.arraycopy(buffer, cut, buffer, 0, length - cut);
+        length -= cut;
+        return chunk;
+    }
+
+    public boolean isParagraphEnd() {
+        return paragraphEnd;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Finds where to cut the full buffer: after the last space, else after
+     * the last white space, else at the end without splitting a surrogate
+     * pair.
+     */
+    private int findCut() {
+        int whitespace = -1;
+        for (int i = length - 1; i >= 0; i--) {
+            char c = buffer[i];
+            if (c == ' ') {
+                return i + 1;
+            }
+            if (whitespace < 0 && Character.isWhitespace(c)) {
+                whitespace = i + 1;
+            }
+        }
+        if (whitespace > 0) {
+            return whitespace;
+        }
+        return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+import java.io.IOException;
+
+/**
+ * Re-cuts the chunks of another source into lines, each chunk ending with
+ * its line terminator: LF, CR or CRLF. Unlike the fixed size chunks of a
+ * {@link ChunkedTextSource} the lines do not move when text is inserted or
+ * removed elsewhere, so they can be recognized again in an edited document.
+ * A line longer than {@link #MAX_LINE_LENGTH} is cut where the underlying
+ * source cut it. Lines are not joined across the paragraphs of the
+ * underlying source.
+ * @author bsodhi
+ */
+public class LineTextSource implements TextSource {
+
+    /**
+     * Length beyond which a line is no longer joined across the chunks of the
+     * underlying source.
+     */
+    public static final int MAX_LINE_LENGTH = PlainTextSource.DEFAULT_CHUNK_SIZE;
+
+    private final TextSource source;
+    /**
+     * Text read from the source and not yet handed out.
+     */
+    private String pending;
+    /**
+     * Offset of {@link #pending} in the document.
+     */
+    private long pendingOffset;
+    private int pos;
+    /**
+     * If the pending text ends a paragraph of the underlying source.
+     */
+    private boolean pendingEnd;
+    private boolean paragraphEnd;
+    private long offset;
+    private boolean eof;
+
+    /**
+     * @param source Source to read the text from.
+     */
+    public LineTextSource(TextSource source) {
+        this.source = source;
+    }
+
+    public String nextChunk() throws IOException {
+        while (true) {
+            if (pending != null && pos < pending.length()) {
+                int end = findLineEnd();
+                if (end < 0 && (pendingEnd || eof)) {
+                    // The rest of a paragraph without a line terminator
+                    end = pending.length();
+                }
+                if (end > 0) {
+                    String line = pos == 0 && end == pending.length()
+                            ? pending : pending.substring(pos, end);
+                    offset = pendingOffset + pos;
+                    pos = end;
+                    paragraphEnd = (pendingEnd || eof) && pos == pending.length();
+                    return line;
+                }
+            }
+            String next = eof ? null : source.nextChunk();
+            if (next == null) {
+                eof = true;
+                if (pending == null || pos == pending.length()) {
+                    pending = null;
+                    return null;
+                }
+                continue;
+            }
+            boolean nextEnd = source.isParagraphEnd();
+            if (pending == null || pos == pending.length()) {
+                pending = next;
+                pendingOffset = source.getOffset();
+            } else if (pending.length() - pos >= MAX_LINE_LENGTH) {
+                String rest = pending.substring(pos);
+                offset = pendingOffset + pos;
+                pending = next;
+                pendingOffset = source.getOffset();
+                pos = 0;
+                pendingEnd = nextEnd;
+                paragraphEnd = false;
+                return rest;
+            } else {
+                pending = pending.substring(pos) + next;
+                pendingOffset += pos;
+            }
+            pos = 0;
+            pendingEnd = nextEnd;
+        }
+    }
+
+    /**
+     * Tells if the line last returned is the last one of a paragraph of the
+     * underlying source.
+     */
+    public boolean isParagraphEnd() {
+        return paragraphEnd;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Finds the end of the line starting at {@link #pos}.
+     * @return Index just after the line terminator, -1 if there is none yet.
+     */
+    private int findLineEnd() {
+        int n = pending.length();
+        for (int i = pos; i < n; i++) {
+            char c = pending.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            }
+            if (c == '\r') {
+                if (i + 1 < n) {
+                    return pending.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+                }
+                // A LF may follow in the next chunk
+                return eof || pendingEnd ? n : -1;
+            }
+        }
+        return -1;
+    }
+
+    public void close() throws IOException {
+        pending = null;
+        source.close();
+    }
+}
@@ -26,6 +26,11 @@ public class MSWordUtil {
      * 
      */
     public static final String MIME_MSWORD = "content/unknown";
+    /**
+     * Plain text files of at least this size are read through
+     * {@link MappedTextSource}.
+     */
+    public static final long MAPPED_INPUT_THRESHOLD = 16L * 1024 * 1024;
     /**
      * 
      */
@@ -53,6 +58,45 @@ public class MSWordUtil {
         return paras;
     }
     
+    /**
+     * Opens the given file for reading its text one chunk at a time. MS Word
+     * documents yield one paragraph per chunk, other files are read as UTF-8
+     * text in chunks of up to {@link PlainTextSource#DEFAULT_CHUNK_SIZE}
+     * chars. Plain text files larger than {@link #MAPPED_INPUT_THRESHOLD} are
+     * memory-mapped instead of being read through a stream.
+     * @param filename
+     * @return Source of the text of the file.
+     * @throws java.io.IOException
+     */
+    public static TextSource openTextSource(String filename) throws IOException {
+        return openTextSource(filename, PlainTextSource.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Opens the given file for reading its text one chunk at a time.
+     * @param filename
+     * @param chunkSize Maximum chunk size for plain text files, in chars.
+     * @return Source of the text of the file.
+     * @throws java.io.IOException
+     * @see #openTextSource(String)
+     */
+    public static TextSource openTextSource(String filename, int chunkSize) throws IOException {
+        if (MIME_MSWORD.equalsIgnoreCase(findMIMEType(filename))) {
+            FileInputStream fis = new FileInputStream(filename);
+            try {
+                WordExtractor extractor = new WordExtractor(fis);
+                return new ParagraphTextSource(extractor.getParagraphText());
+            } finally {
+                fis.close();
+            }
+        }
+        File file = new File(filename);
+        if (file.length() >= MAPPED_INPUT_THRESHOLD) {
+            return new MappedTextSource(file, chunkSize, MappedTextSource.DEFAULT_WINDOW_SIZE);
+        }
+        return new PlainTextSource(file, chunkSize);
+    }
+
     /**
      * 
      * @param filename
@@ -61,29 +105,15 @@ public class MSWordUtil {
     public static ArrayList<String> extractWords(String filename) {
         
         ArrayList<String> words = new ArrayList<String>();
-        String[] paras;
         try {
-            String mime = findMIMEType(filename);
-            if (MIME_MSWORD.equalsIgnoreCase(mime)) {
-                WordExtractor extractor = new WordExtractor(new FileInputStream(filename));
-                paras = extractor.getParagraphText();
-            } else {
-                paras = new String[]{getFileContentAsUTF8Text(filename)};
-            }
-            for (String para : paras) {
-                words.add(para);
-                /*
-                String[] lines = para.split("\\n");
-                for (String line : lines) {
-                    String[] tabbed = line.split("\\t");
-                    for (String tab : tabbed) {
-                        String[] parts = tab.split(" ");
-                        for (String word : parts) {
-                            words.add(word);
-                        }
-                    }
+            TextSource source = openTextSource(filename);
+            try {
+                String para;
+                while ((para = source.nextChunk()) != null) {
+                    words.add(para);
                 }
-                */
+            } finally {
+                source.close();
             }
         } catch (IOException ex) {
             logger.log(Level.SEVERE, null, ex);
@@ -100,12 +130,18 @@ public class MSWordUtil {
      */
     private static String getFileContentAsUTF8Text(String filePath) throws IOException {
 
-        File file = new File(filePath);
-        byte[] data = new byte[(int)file.length()];
-        FileInputStream fis = new FileInputStream(file);
-        fis.read(data);
-        fis.close();
-        return new String(data, CHARSET_UTF8);
+        StringBuilder sb = new StringBuilder();
+        PlainTextSource source = new PlainTextSource(new File(filePath),
+                PlainTextSource.DEFAULT_CHUNK_SIZE);
+        try {
+            String chunk;
+            while ((chunk = source.nextChunk()) != null) {
+                sb.append(chunk);
+            }
+        } finally {
+            source.close();
+        }
+        return sb.toString();
     }
     
     /**
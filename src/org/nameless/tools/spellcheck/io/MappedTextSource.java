@@ -0,0 +1,116 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads a large UTF-8 text file by mapping it into memory one window at a
+ * time with {@link FileChannel#map} and decoding the mapped bytes straight
+ * into the chunk buffer with a {@link CharsetDecoder}. The file content is
+ * never copied to the heap as a whole, and a UTF-8 sequence split by the end
+ * of a window is decoded from the start of the next one.
+ * @author bsodhi
+ */
+public class MappedTextSource extends ChunkedTextSource {
+
+    /**
+     * Default size of a mapped window, in bytes.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final CharsetDecoder decoder;
+    private final CharBuffer out;
+    /**
+     * File position of the current window.
+     */
+    private long windowStart;
+    private ByteBuffer window;
+    /**
+     * Set once all the mapped input has been passed to the decoder.
+     */
+    private boolean decoded;
+
+    /**
+     * Opens the given UTF-8 file.
+     * @param file File to read.
+     * @param chunkSize Maximum size of a chunk, in chars.
+     * @param windowSize Size of a mapped window, in bytes.
+     * @throws java.io.IOException
+     */
+    public MappedTextSource(File file, int chunkSize, int windowSize) throws IOException {
+        super(chunkSize);
+        if (windowSize < 16) {
+            throw new IllegalArgumentException("windowSize: " + windowSize);
+        }
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        // Malformed input is replaced as new String(byte[], "UTF-8") does
+        this.decoder = Charset.forName(MSWordUtil.CHARSET_UTF8).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.out = CharBuffer.wrap(buffer);
+    }
+
+    protected void fill() throws IOException {
+        out.clear();
+        out.position(length);
+        while (!eof && out.hasRemaining()) {
+            if (window == null) {
+                map();
+            }
+            if (!decoded) {
+                boolean last = isLastWindow();
+                if (decoder.decode(window, out, last).isOverflow()) {
+                    break;
+                }
+                if (!last) {
+                    // Continue with the next window, which starts with any
+                    // incomplete sequence left at the end of this one
+                    map();
+                    continue;
+                }
+                decoded = true;
+            }
+            if (decoder.flush(out).isOverflow()) {
+                break;
+            }
+            eof = true;
+        }
+        length = out.position();
+    }
+
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    private boolean isLastWindow() {
+        return windowStart + window.limit() >= size;
+    }
+
+    /**
+     * Maps the next window, starting at the first byte not yet decoded.
+     */
+    private void map() throws IOException {
+        if (window != null) {
+            windowStart += window.position();
+        }
+        long length = Math.min(windowSize, size - windowStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+/**
+ * Hands out already extracted paragraphs one at a time, e.g. those of an MS
+ * Word document.
+ * @author bsodhi
+ */
+public class ParagraphTextSource implements TextSource {
+
+    private String[] paras;
+    private int next;
+    /**
+     * Offsets of the paragraph last returned and of the next one.
+     */
+    private long offset;
+    private long position;
+
+    /**
+     * @param paras Paragraphs of the document.
+     */
+    public ParagraphTextSource(String[] paras) {
+        this.paras = paras;
+    }
+
+    public String nextChunk() {
+        if (paras == null || next == paras.length) {
+            return null;
+        }
+        String para = paras[next];
+        // Let the paragraph be collected once it is handed out
+        paras[next++] = null;
+        offset = position;
+        position += para.length();
+        return para;
+    }
+
+    public boolean isParagraphEnd() {
+        return true;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void close() {
+        paras = null;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Reads a plain text file in chunks through a fixed size buffer, so the
+ * memory used does not depend on the size of the file.
+ * @author bsodhi
+ */
+public class PlainTextSource extends ChunkedTextSource {
+
+    /**
+     * Default size of a chunk, in chars.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private final Reader reader;
+
+    /**
+     * Opens the given UTF-8 file.
+     * @param file File to read.
+     * @param chunkSize Maximum size of a chunk, in chars.
+     * @throws java.io.IOException
+     */
+    public PlainTextSource(File file, int chunkSize) throws IOException {
+        this(new FileInputStream(file), MSWordUtil.CHARSET_UTF8, chunkSize);
+    }
+
+    /**
+     * Reads the given stream.
+     * @param input Stream to read, closed by {@link #close()}.
+     * @param charset Encoding of the text.
+     * @param chunkSize Maximum size of a chunk, in chars.
+     * @throws java.io.IOException
+     */
+    public PlainTextSource(InputStream input, String charset, int chunkSize)
+            throws IOException {
+        super(chunkSize);
+        this.reader = new InputStreamReader(input, charset);
+    }
+
+    protected void fill() throws IOException {
+        while (!eof && length < buffer.length) {
+            int n = reader.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                length += n;
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * RSS Beas.
+ */
+package org.nameless.tools.spellcheck.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of the text to be spell-checked, read one chunk at a time so that
+ * checking can start before the whole input has been read. A paragraph too
+ * large for one chunk is cut at white space into several chunks, which the
+ * reader joins again where it needs to, e.g. for a compound word running on
+ * across the cut.
+ * @author bsodhi
+ */
+public interface TextSource extends Closeable {
+
+    /**
+     * Reads the next chunk of text.
+     * @return The next chunk or null if there is no more text.
+     * @throws java.io.IOException
+     */
+    String nextChunk() throws IOException;
+
+    /**
+     * Tells if the chunk last returned ends a paragraph. A chunk cut from a
+     * paragraph only to bound its size does not; the next chunk goes on with
+     * the same paragraph.
+     * @return true if the chunk ends a paragraph.
+     */
+    boolean isParagraphEnd();
+
+    /**
+     * Offset in the document of the chunk last returned, counted in chars
+     * of the text read from this source.
+     * @return Offset of the first char of the chunk.
+     */
+    long getOffset();
+}
@@ -11,7 +11,6 @@ import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ImageIcon;
@@ -480,11 +479,7 @@ public class SpellCheckerApp extends javax.swing.JFrame {
         spellChecker.clearCustomDictionaries();
         String defDict = PrefsHelper.getDefaultDictionary();
         // Add custom dictionaries if any set via settings
-        Iterator it = PrefsHelper.getDictionaries().values().iterator();
-        while (it.hasNext()) {
-            String file = it.next().toString();
-            spellChecker.addCustomDictionary(file, file.equals(defDict));
-        }
+        spellChecker.addCustomDictionaries(PrefsHelper.getDictionaries().values(), defDict);
     }
 
     /**
@@ -524,6 +519,10 @@ public class SpellCheckerApp extends javax.swing.JFrame {
     public void initSpellChecker() {
         try {            
             spellChecker = new SpellChecker();
+            // The same file is usually checked again after editing it
+            spellChecker.setRecentDocumentCount(4);
+            // Shared dictionaries may be updated while the application runs
+            spellChecker.setWatchingDictionaries(true);
             errorsAdapter = new SpellingErrorAdapter(jEditorPane1.getDocument());
             applyCustomDictionaries();            
         } catch (IOException ex) {
@@ -0,0 +1,34 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the words added to an {@link AutomatonDictionary}.
+ * @author bsodhi
+ */
+public class AutomatonDictionaryTest {
+
+    @Test
+    public void addedWordsIterateInOrder() throws IOException {
+        AutomatonDictionary d = new AutomatonDictionary(
+                new ArrayList<String>(Arrays.asList("beta", "delta")));
+        d.add("gamma\nAlpha\nepsilon\nbeta");
+        ArrayList<String> words = new ArrayList<String>();
+        for (Iterator<String> it = d.iterator(); it.hasNext();) {
+            words.add(it.next());
+        }
+        assertEquals(Arrays.asList("alpha", "beta", "delta", "epsilon", "gamma"), words);
+        assertEquals(5, d.getSize());
+        assertTrue(d.containsWord("Gamma"));
+        assertTrue(d.containsWord(" alpha ", 1, 6));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the words looked up in place are folded as
+ * {@link String#toLowerCase()} folds the words of the dictionaries.
+ * @author bsodhi
+ */
+public class CaseFoldingTest {
+
+    @Test
+    public void finalSigma() {
+        assertFound("ΟΔΟΣ", "ΟΔΟΣ");
+    }
+
+    @Test
+    public void dottedCapitalI() {
+        assertFound("İstanbul", "İSTANBUL");
+    }
+
+    @Test
+    public void turkishLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertFound("Isparta", "ISPARTA");
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void asciiIsFoldedPerChar() {
+        assertTrue(CaseFolding.isPerChar("Hello", 0, 5));
+        assertFalse(CaseFolding.isPerChar("ΟΔΟΣ", 0, 4));
+        assertFound("hello", "HeLLo");
+    }
+
+    /**
+     * Asserts that a token is found in a dictionary of the given word, as
+     * it would be once both were folded as strings.
+     */
+    private static void assertFound(String word, String token) {
+        String lower = word.toLowerCase();
+        assertEquals(lower, token.toLowerCase());
+        AutomatonDictionary d = new AutomatonDictionary(new ArrayList<String>(Arrays.asList(lower)));
+        String text = " " + token + " ";
+        int end = text.length() - 1;
+        assertTrue(d.containsWord(text, 1, end));
+        assertTrue(new WordIndex(d).contains(text, 1, end));
+        assertTrue(BloomFilter.of(Arrays.asList(lower), 0).mightContain(text, 1, end));
+        assertTrue(AbstractDictionary.search(new String[] {lower}, text, 1, end));
+    }
+}
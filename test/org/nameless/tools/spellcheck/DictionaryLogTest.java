@@ -0,0 +1,158 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the replay, torn records and compaction of {@link DictionaryLog}.
+ * @author bsodhi
+ */
+public class DictionaryLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dict", ".txt");
+        write(file, "alpha\nbeta\n");
+    }
+
+    @After
+    public void tearDown() {
+        new File(file.getPath() + DictionaryLog.SUFFIX).delete();
+        new File(file.getPath() + DictionaryLog.LOCK_SUFFIX).delete();
+        file.delete();
+    }
+
+    @Test
+    public void replayKeepsLastChangeOfEachWord() throws IOException {
+        DictionaryLog log = new DictionaryLog(file);
+        log.commit(log.append(records("+gamma", "+delta", "-gamma", "-beta")));
+        LinkedHashMap<String, Boolean> changes = new DictionaryLog(file).replay();
+        assertEquals(Arrays.asList("gamma", "delta", "beta"),
+                Arrays.asList(changes.keySet().toArray()));
+        assertEquals(Boolean.FALSE, changes.get("gamma"));
+        assertEquals(Boolean.TRUE, changes.get("delta"));
+        assertEquals(Boolean.FALSE, changes.get("beta"));
+    }
+
+    @Test
+    public void replayOfMissingLogIsEmpty() throws IOException {
+        assertTrue(new DictionaryLog(file).replay().isEmpty());
+    }
+
+    @Test
+    public void replayDiscardsTornRecord() throws IOException {
+        DictionaryLog log = new DictionaryLog(file);
+        write(log.getFile(), "+hello\n-beta\n+hel");
+        LinkedHashMap<String, Boolean> changes = log.replay();
+        assertEquals(2, changes.size());
+        assertTrue(changes.get("hello"));
+        assertFalse(changes.containsKey("hel"));
+        assertEquals(2, log.getRecordCount());
+    }
+
+    @Test
+    public void appendCutsTornRecord() throws IOException {
+        DictionaryLog log = new DictionaryLog(file);
+        write(log.getFile(), "+hello\n+hel");
+        log.replay();
+        log.commit(log.append(records("+world")));
+        assertEquals("+hello\n+world\n", read(log.getFile()));
+    }
+
+    @Test
+    public void compactRewritesFileAndEmptiesLog() throws IOException {
+        DictionaryLog log = new DictionaryLog(file);
+        log.append(records("+gamma", "-alpha"));
+        List<String> written = log.compact(new ApplyRewriter());
+        assertEquals(Arrays.asList("beta", "gamma"), written);
+        assertEquals("beta\ngamma\n", read(file));
+        assertFalse(log.getFile().exists());
+        assertEquals(0, log.getRecordCount());
+    }
+
+    @Test
+    public void compactKeepsRecordsOfOtherLogs() throws IOException {
+        // Another process sharing the dictionary file
+        DictionaryLog other = new DictionaryLog(file);
+        other.commit(other.append(records("+teamword")));
+        DictionaryLog log = new DictionaryLog(file);
+        log.append(records("+gamma"));
+        log.compact(new ApplyRewriter());
+        assertEquals("alpha\nbeta\ngamma\nteamword\n", read(file));
+    }
+
+    @Test
+    public void compactKeepsEditsOfFile() throws IOException {
+        DictionaryLog log = new DictionaryLog(file);
+        log.commit(log.append(records("+gamma")));
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("teamword\n".getBytes("UTF-8"));
+        out.close();
+        log.compact(new ApplyRewriter());
+        assertEquals("alpha\nbeta\ngamma\nteamword\n", read(file));
+    }
+
+    private static StringBuilder records(String... recs) {
+        StringBuilder sb = new StringBuilder();
+        for (String r : recs) {
+            DictionaryLog.format(sb, r.substring(1), r.charAt(0) == '+');
+        }
+        return sb;
+    }
+
+    static void write(File f, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    static String read(File f) throws IOException {
+        FileInputStream in = new FileInputStream(f);
+        try {
+            byte[] b = new byte[(int) f.length()];
+            int n = 0;
+            while (n < b.length) {
+                n += in.read(b, n, b.length - n);
+            }
+            return new String(b, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Applies the records to the words of the file, as a dictionary does.
+     */
+    private static class ApplyRewriter implements DictionaryLog.Rewriter {
+
+        public List<String> rewrite(String[] words, LinkedHashMap<String, Boolean> changes) {
+            java.util.TreeSet<String> w = new java.util.TreeSet<String>(Arrays.asList(words));
+            for (java.util.Map.Entry<String, Boolean> e : changes.entrySet()) {
+                if (e.getValue()) {
+                    w.add(e.getKey());
+                } else {
+                    w.remove(e.getKey());
+                }
+            }
+            return new java.util.ArrayList<String>(w);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests optimizing a dictionary file another dictionary has loaded.
+ * @author bsodhi
+ */
+public class DictionaryOptimizerTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dict", ".txt");
+        DictionaryLogTest.write(file, "Beta\nalpha\nbeta\nthe\n");
+    }
+
+    @After
+    public void tearDown() {
+        new File(file.getPath() + DictionaryLog.SUFFIX).delete();
+        new File(file.getPath() + DictionaryLog.LOCK_SUFFIX).delete();
+        file.delete();
+    }
+
+    @Test
+    public void optimizeKeepsChangesOfOpenDictionary() throws IOException {
+        Dictionary open = new Dictionary();
+        open.loadFromFile(file);
+        open.add("gamma");
+        AutomatonDictionary system = new AutomatonDictionary(
+                new ArrayList<String>(Arrays.asList("the")));
+        DictionaryOptimizer.Report r = DictionaryOptimizer.optimize(file, system);
+        assertEquals("alpha\nbeta\ngamma\n", DictionaryLogTest.read(file));
+        assertEquals(5, r.getEntriesBefore());
+        assertEquals(3, r.getEntriesAfter());
+        assertEquals(1, r.getPruned());
+        // The lock is released: the open dictionary can still log changes
+        open.add("delta");
+        open.close();
+        Dictionary reopened = new Dictionary();
+        reopened.loadFromFile(file);
+        assertTrue(reopened.containsWord("delta"));
+        assertTrue(reopened.containsWord("gamma"));
+        reopened.close();
+    }
+}
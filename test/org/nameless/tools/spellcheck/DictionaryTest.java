@@ -0,0 +1,90 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the changes made to a {@link Dictionary} and to its file by
+ * other programs are both kept.
+ * @author bsodhi
+ */
+public class DictionaryTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dict", ".txt");
+        DictionaryLogTest.write(file, "alpha\nbeta\n");
+    }
+
+    @After
+    public void tearDown() {
+        new File(file.getPath() + DictionaryLog.SUFFIX).delete();
+        new File(file.getPath() + DictionaryLog.LOCK_SUFFIX).delete();
+        file.delete();
+    }
+
+    @Test
+    public void closeKeepsEditsOfFile() throws IOException {
+        Dictionary d = new Dictionary();
+        d.loadFromFile(file);
+        d.add("gamma");
+        appendToFile("teamword\n");
+        d.close();
+        Dictionary reopened = new Dictionary();
+        reopened.loadFromFile(file);
+        for (String w : new String[] {"alpha", "beta", "gamma", "teamword"}) {
+            assertTrue(w, reopened.containsWord(w));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void compactMergesEditsOfFile() throws IOException {
+        Dictionary d = new Dictionary();
+        d.loadFromFile(file);
+        d.add("gamma");
+        d.remove("alpha");
+        appendToFile("teamword\n");
+        d.compact();
+        assertEquals("beta\ngamma\nteamword\n", DictionaryLogTest.read(file));
+        assertTrue(d.containsWord("teamword"));
+        assertFalse(d.containsWord("alpha"));
+        assertFalse(new File(file.getPath() + DictionaryLog.SUFFIX).exists());
+        d.close();
+    }
+
+    @Test
+    public void compactKeepsChangesOfOtherDictionaries() throws IOException {
+        // Two processes with the same dictionary file
+        Dictionary a = new Dictionary();
+        a.loadFromFile(file);
+        Dictionary b = new Dictionary();
+        b.loadFromFile(file);
+        a.add("gamma");
+        b.add("delta");
+        a.compact();
+        assertEquals("alpha\nbeta\ndelta\ngamma\n", DictionaryLogTest.read(file));
+        a.close();
+        b.close();
+    }
+
+    private void appendToFile(String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
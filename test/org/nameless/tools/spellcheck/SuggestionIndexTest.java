@@ -0,0 +1,65 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ranking of the suggestions of a {@link SuggestionIndex}.
+ * @author bsodhi
+ */
+public class SuggestionIndexTest {
+
+    private SuggestionIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SuggestionIndex();
+        index.addDictionary(new AutomatonDictionary(new ArrayList<String>(Arrays.asList(
+                "believe", "defiantly", "definedly", "definitely", "delicately",
+                "fane", "fine", "foen", "fone", "fono", "one", "phone",
+                "receive", "recife", "relieve", "resave"))));
+    }
+
+    @Test
+    public void commonWordsComeFirst() {
+        HashMap<String, Integer> levels = new HashMap<String, Integer>();
+        for (String w : new String[] {"fine", "one", "phone", "receive"}) {
+            levels.put(w, 0);
+        }
+        for (String w : new String[] {"believe", "definitely", "relieve"}) {
+            levels.put(w, 10);
+        }
+        levels.put("defiantly", 35);
+        index.setWordLevels(levels);
+        assertEquals("receive", index.suggest("recieve", 3).get(0));
+        assertEquals("definitely", index.suggest("definately", 3).get(0));
+        assertEquals(Arrays.asList("fone", "phone", "fine", "one", "fane", "foen", "fono"),
+                index.suggest("fone", 7));
+    }
+
+    @Test
+    public void sameSoundSpellingComesFirst() {
+        List<String> s = index.suggest("fone", 5);
+        assertEquals(Arrays.asList("fone", "phone"), s.subList(0, 2));
+        assertEquals("receive", index.suggest("recieve", 3).get(0));
+        assertEquals("definitely", index.suggest("definately", 3).get(0));
+    }
+
+    @Test
+    public void levelsClearCachedSuggestions() {
+        assertEquals("fone", index.suggest("fone", 3).get(0));
+        HashMap<String, Integer> levels = new HashMap<String, Integer>();
+        levels.put("fane", 10);
+        index.setWordLevels(levels);
+        assertEquals(Arrays.asList("fone", "fane", "phone"), index.suggest("fone", 3));
+    }
+}
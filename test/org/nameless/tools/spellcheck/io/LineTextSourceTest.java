@@ -0,0 +1,46 @@
+/*
+ * RSS Beas.
+ */
+
+package org.nameless.tools.spellcheck.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the lines, paragraph ends and offsets of a {@link LineTextSource}.
+ * @author bsodhi
+ */
+public class LineTextSourceTest {
+
+    @Test
+    public void linesKeepTheParagraphsOfTheSource() throws IOException {
+        LineTextSource s = new LineTextSource(new ParagraphTextSource(
+                new String[] {"one\r\ntwo", "three\rfour\n"}));
+        assertLine(s, "one\r\n", 0, false);
+        assertLine(s, "two", 5, true);
+        assertLine(s, "three\r", 8, false);
+        assertLine(s, "four\n", 14, true);
+        assertNull(s.nextChunk());
+        s.close();
+    }
+
+    @Test
+    public void linesAreJoinedAcrossChunks() throws IOException {
+        LineTextSource s = new LineTextSource(new PlainTextSource(new ByteArrayInputStream(
+                "alpha beta\r\ngamma delta\n".getBytes("UTF-8")), "UTF-8", 8));
+        assertLine(s, "alpha beta\r\n", 0, false);
+        assertLine(s, "gamma delta\n", 12, true);
+        assertNull(s.nextChunk());
+        s.close();
+    }
+
+    private static void assertLine(TextSource s, String line, long offset, boolean end)
+            throws IOException {
+        assertEquals(line, s.nextChunk());
+        assertEquals(offset, s.getOffset());
+        assertEquals(end, s.isParagraphEnd());
+    }
+}